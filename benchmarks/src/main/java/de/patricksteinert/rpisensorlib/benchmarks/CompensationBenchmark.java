@@ -0,0 +1,147 @@
+package de.patricksteinert.rpisensorlib.benchmarks;
+
+import de.patricksteinert.rpisensorlib.AdafruitBMP280;
+import de.patricksteinert.rpisensorlib.BMP180Calibration;
+import de.patricksteinert.rpisensorlib.BMP280Calibration;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.sim.BMP280Emulator;
+import de.patricksteinert.rpisensorlib.sim.SimulatedI2CBus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compensation math of the barometric sensors: the BMP280 driver methods (floating point)
+ * next to the integer variant of the datasheet, and the BMP180 math behind readPressure().
+ * The raw values vary around the datasheet examples so the results cannot be constant folded.
+ * The setup verifies the bulk integer compensation bit-exact against the scalar methods.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar CompensationBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompensationBenchmark {
+
+    private static final int SIMULATED_BUS = 100;
+    private static final int SAMPLES = 1024;
+    // Several parallel chunks and a remainder
+    private static final int BULK_SAMPLES = 4 * 8192 + 17;
+
+    // Raw values of the compensation examples in the datasheets
+    private static final int BMP280_RAW_TEMPERATURE = 519888;
+    private static final int BMP280_RAW_PRESSURE = 415148;
+    private static final int BMP180_RAW_TEMPERATURE = 27898;
+    private static final int BMP180_RAW_PRESSURE = 23843;
+
+    private AdafruitBMP280 bmp280;
+    private BMP280Calibration bmp280Calibration;
+    private BMP180Calibration bmp180Calibration = BMP180Calibration.DATASHEET_EXAMPLE;
+
+    private final int[] bmp280RawTemperature = new int[SAMPLES];
+    private final int[] bmp280RawPressure = new int[SAMPLES];
+    private final int[] bmp180RawTemperature = new int[SAMPLES];
+    private final int[] bmp180RawPressure = new int[SAMPLES];
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        // The driver needs a device to read its calibration from
+        SimulatedI2CBus simulated = new SimulatedI2CBus();
+        simulated.setTransactionLatency(0, 0);
+        simulated.attach(new BMP280Emulator());
+        ManagedI2CBus bus = I2CBusManager.getInstance().register(SIMULATED_BUS, simulated);
+        bmp280 = new AdafruitBMP280(bus.getDevice(AdafruitBMP280.BMP280_ADDRESS));
+        bmp280Calibration = bmp280.getCalibration();
+
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            bmp280RawTemperature[i] = BMP280_RAW_TEMPERATURE + random.nextInt(20000) - 10000;
+            bmp280RawPressure[i] = BMP280_RAW_PRESSURE + random.nextInt(20000) - 10000;
+            bmp180RawTemperature[i] = BMP180_RAW_TEMPERATURE + random.nextInt(2000) - 1000;
+            bmp180RawPressure[i] = BMP180_RAW_PRESSURE + random.nextInt(2000) - 1000;
+        }
+        verifyBulkCompensation(random);
+    }
+
+    private void verifyBulkCompensation(Random random) {
+        int[] rawP = new int[BULK_SAMPLES];
+        int[] rawT = new int[BULK_SAMPLES];
+        for (int i = 0; i < BULK_SAMPLES; i++) {
+            rawT[i] = BMP280_RAW_TEMPERATURE + random.nextInt(200000) - 100000;
+            rawP[i] = BMP280_RAW_PRESSURE + random.nextInt(200000) - 100000;
+        }
+        int[] outPa = new int[BULK_SAMPLES];
+        int[] outCentiC = new int[BULK_SAMPLES];
+        int[] parallelPa = new int[BULK_SAMPLES];
+        int[] parallelCentiC = new int[BULK_SAMPLES];
+        bmp280Calibration.compensate(rawP, rawT, outPa, outCentiC, 0, BULK_SAMPLES);
+        bmp280Calibration.compensateParallel(rawP, rawT, parallelPa, parallelCentiC, 0, BULK_SAMPLES);
+        for (int i = 0; i < BULK_SAMPLES; i++) {
+            int tFine = bmp280Calibration.computeTFineInt(rawT[i]);
+            if (tFine != bmp280Calibration.computeTFine(rawT[i])
+                    || outCentiC[i] != BMP280Calibration.temperatureCentiCelsius(tFine)
+                    || outCentiC[i] != Math.round(bmp280.compensateTemperature(rawT[i]) * 100)
+                    || outPa[i] != (int) (bmp280Calibration.compensatePressureQ24_8(rawP[i], tFine) >> 8)
+                    || parallelPa[i] != outPa[i] || parallelCentiC[i] != outCentiC[i])
+                throw new IllegalStateException("Sample " + i + " compensated wrong");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        I2CBusManager.getInstance().shutdown();
+    }
+
+    private int next() {
+        index = (index + 1) & (SAMPLES - 1);
+        return index;
+    }
+
+    @Benchmark
+    public double bmp280Temperature() {
+        return bmp280.compensateTemperature(bmp280RawTemperature[next()]);
+    }
+
+    @Benchmark
+    public double bmp280Pressure() {
+        int i = next();
+        return bmp280.compensatePressure(bmp280RawPressure[i], bmp280RawTemperature[i]);
+    }
+
+    @Benchmark
+    public long bmp280PressureInteger() {
+        int i = next();
+        int tFine = bmp280Calibration.computeTFineInt(bmp280RawTemperature[i]);
+        return bmp280Calibration.compensatePressureQ24_8(bmp280RawPressure[i], tFine);
+    }
+
+    @Benchmark
+    public float bmp180Temperature() {
+        return BMP180Calibration.temperatureFromB5(bmp180Calibration.computeB5(bmp180RawTemperature[next()]));
+    }
+
+    @Benchmark
+    public int bmp180Pressure() {
+        int i = next();
+        int b5 = bmp180Calibration.computeB5(bmp180RawTemperature[i]);
+        return bmp180Calibration.compensatePressure(bmp180RawPressure[i], b5, 0);
+    }
+}
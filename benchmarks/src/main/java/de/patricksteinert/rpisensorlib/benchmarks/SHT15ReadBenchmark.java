@@ -0,0 +1,59 @@
+package de.patricksteinert.rpisensorlib.benchmarks;
+
+import de.patricksteinert.rpisensorlib.SHT15;
+import de.patricksteinert.rpisensorlib.replay.ReplayClock;
+import de.patricksteinert.rpisensorlib.sim.SHT15Emulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of clocking SHT15 reads over the emulated two-wire interface: command, acknowledge,
+ * data bytes and CRC check. A virtual clock skips the conversion times and the duty-cycle
+ * pacing, what remains are the clock edges.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar SHT15ReadBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SHT15ReadBenchmark {
+
+    @Param({"0", "100"})
+    public long clockHalfPeriodNanos;
+
+    private SHT15 sht15;
+
+    @Setup
+    public void setUp() {
+        SHT15Emulator emulator = new SHT15Emulator(new ReplayClock(ReplayClock.AS_FAST_AS_POSSIBLE, System.nanoTime()));
+        emulator.setTemperature(23.0);
+        emulator.setHumidity(45.0);
+        sht15 = new SHT15(emulator);
+        sht15.setClockHalfPeriodNanos(clockHalfPeriodNanos);
+    }
+
+    @Benchmark
+    public double readTemperature() throws InterruptedException {
+        return sht15.readTemperature();
+    }
+
+    @Benchmark
+    public SHT15.Measurement readTemperatureAndHumidity() throws InterruptedException {
+        return sht15.readTemperatureAndHumidity();
+    }
+}
@@ -0,0 +1,151 @@
+package de.patricksteinert.rpisensorlib.benchmarks;
+
+import de.patricksteinert.rpisensorlib.BMP280Calibration;
+import de.patricksteinert.rpisensorlib.sim.BMP280Emulator;
+import de.patricksteinert.rpisensorlib.store.BlockIndex;
+import de.patricksteinert.rpisensorlib.store.SampleDecoder;
+import de.patricksteinert.rpisensorlib.store.SampleEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link SampleEncoder} and {@link SampleDecoder} in samples per second on
+ * simulated traces of 10 Hz readings with scheduler jitter: BMP280 pressure compensated from a
+ * random walk of the raw values, SHT15 humidity from 12 bit raw values and TSL45315 light in
+ * whole lux. The compression ratio of each trace is printed during the setup.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar SampleCodecBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SampleCodecBenchmark {
+
+    private static final int SAMPLES = 10000;
+    private static final long PERIOD_NANOS = 100000000L;
+    private static final double JITTER_NANOS = 20000;
+
+    @Param({"bmp280-pressure", "sht15-humidity", "tsl45315-light"})
+    public String trace;
+
+    private final long[] timestamps = new long[SAMPLES];
+    private final double[] values = new double[SAMPLES];
+    private ByteBuffer encodeBuffer;
+    private ByteBuffer encoded;
+    private BlockIndex index;
+    private int seek;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++)
+            timestamps[i] = i * PERIOD_NANOS + Math.round(random.nextGaussian() * JITTER_NANOS);
+        switch (trace) {
+            case "bmp280-pressure":
+                bmp280Pressure(random);
+                break;
+            case "sht15-humidity":
+                sht15Humidity(random);
+                break;
+            case "tsl45315-light":
+                tsl45315Light(random);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown trace: " + trace);
+        }
+
+        encodeBuffer = ByteBuffer.allocateDirect(SAMPLES * 20 + 4096);
+        SampleEncoder encoder = encodeTrace();
+        index = encoder.getIndex();
+        encoded = encodeBuffer.duplicate();
+        encoded.flip();
+
+        SampleDecoder decoder = new SampleDecoder(encoded);
+        for (int i = 0; i < SAMPLES; i++) {
+            if (!decoder.next() || decoder.getTimestampNanos() != timestamps[i] || decoder.getValue() != values[i])
+                throw new IllegalStateException("Sample " + i + " decoded wrong");
+        }
+        System.out.printf("%n%s: %.2f bytes per sample, compression ratio %.1f : 1%n", trace,
+                (double) encoded.limit() / SAMPLES, 16.0 * SAMPLES / encoded.limit());
+    }
+
+    private void bmp280Pressure(Random random) {
+        BMP280Calibration calibration = BMP280Emulator.DATASHEET_EXAMPLE;
+        int rawPressure = 415148;
+        int rawTemperature = 519888;
+        for (int i = 0; i < SAMPLES; i++) {
+            rawPressure += random.nextInt(33) - 16;
+            rawTemperature += random.nextInt(9) - 4;
+            values[i] = calibration.compensatePressure(rawPressure, (double) calibration.computeTFine(rawTemperature));
+        }
+    }
+
+    private void sht15Humidity(Random random) {
+        // Linear humidity and temperature compensation of the SHT15 driver at 23 Celsius
+        int raw = 1500;
+        for (int i = 0; i < SAMPLES; i++) {
+            raw = Math.max(0, Math.min(0xFFF, raw + random.nextInt(3) - 1));
+            double linear = -2.0468 + 0.0367 * raw - 0.0000015955 * raw * raw;
+            values[i] = (23.0 - 25.0) * (0.01 + 0.00008 * raw) + linear;
+        }
+    }
+
+    private void tsl45315Light(Random random) {
+        int lux = 420;
+        for (int i = 0; i < SAMPLES; i++) {
+            lux = Math.max(0, lux + random.nextInt(5) - 2);
+            values[i] = lux;
+        }
+    }
+
+    private SampleEncoder encodeTrace() {
+        encodeBuffer.clear();
+        SampleEncoder encoder = new SampleEncoder(encodeBuffer);
+        for (int i = 0; i < SAMPLES; i++)
+            encoder.append(timestamps[i], values[i]);
+        encoder.finish();
+        return encoder;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public int encode() {
+        return encodeTrace().getBuffer().position();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double decode() {
+        SampleDecoder decoder = new SampleDecoder(encoded);
+        double sum = 0;
+        while (decoder.next())
+            sum += decoder.getValue() + decoder.getTimestampNanos();
+        return sum;
+    }
+
+    @Benchmark
+    public double seek() {
+        seek = (seek + 7919) % SAMPLES;
+        SampleDecoder decoder = new SampleDecoder(encoded);
+        decoder.seek(index, timestamps[seek]);
+        return decoder.getValue();
+    }
+}
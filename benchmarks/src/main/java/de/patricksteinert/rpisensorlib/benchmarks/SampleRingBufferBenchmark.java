@@ -0,0 +1,77 @@
+package de.patricksteinert.rpisensorlib.benchmarks;
+
+import de.patricksteinert.rpisensorlib.stream.SampleRingBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing a sample into a {@link SampleRingBuffer}, alone and with concurrent
+ * readers polling the buffer.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar SampleRingBufferBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class SampleRingBufferBenchmark {
+
+    @Param({"1024"})
+    public int capacity;
+
+    private SampleRingBuffer buffer;
+    private long timestamp;
+    private double value;
+
+    @Setup
+    public void setUp() {
+        buffer = new SampleRingBuffer(capacity);
+    }
+
+    @State(Scope.Thread)
+    public static class ReaderState {
+        SampleRingBuffer.Reader reader;
+    }
+
+    @Benchmark
+    @Group("publish")
+    public void publish() {
+        buffer.publish(timestamp++, value += 0.5);
+    }
+
+    @Benchmark
+    @Group("publishWithReaders")
+    @GroupThreads(1)
+    public void publishWithReadersWriter() {
+        buffer.publish(timestamp++, value += 0.5);
+    }
+
+    @Benchmark
+    @Group("publishWithReaders")
+    @GroupThreads(2)
+    public void publishWithReadersReader(ReaderState state, Blackhole blackhole) {
+        if (state.reader == null)
+            state.reader = buffer.newReader();
+        while (state.reader.next()) {
+            blackhole.consume(state.reader.getTimestampNanos());
+            blackhole.consume(state.reader.getValue());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package de.patricksteinert.rpisensorlib.benchmarks;
+
+import de.patricksteinert.rpisensorlib.AdafruitBMP180;
+import de.patricksteinert.rpisensorlib.AdafruitBMP280;
+import de.patricksteinert.rpisensorlib.TSL45315;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.sim.BMP180Emulator;
+import de.patricksteinert.rpisensorlib.sim.BMP280Emulator;
+import de.patricksteinert.rpisensorlib.sim.SimulatedI2CBus;
+import de.patricksteinert.rpisensorlib.sim.TSL45315Emulator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end reads through the drivers, the bus worker and the emulators on a simulated bus.
+ * The latency of the bus is configurable: without latency the result is the software
+ * overhead of a read, with the defaults of {@link SimulatedI2CBus} it is close to a 100 kHz bus.
+ * The BMP180 reads include the conversion times of the sensor.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar SimulatedReadBenchmark -prof gc
+ * java -jar benchmarks/target/benchmarks.jar SimulatedReadBenchmark -p byteMicros=22 -p overheadMicros=40
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SimulatedReadBenchmark {
+
+    private static final int SIMULATED_BUS = 101;
+    private static final int BMP280_ADDRESS = 0x76;
+
+    @Param({"0", "150"})
+    public long overheadMicros;
+
+    @Param({"0", "90"})
+    public long byteMicros;
+
+    private AdafruitBMP180 bmp180;
+    private AdafruitBMP280 bmp280;
+    private TSL45315 tsl45315;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        SimulatedI2CBus simulated = new SimulatedI2CBus();
+        simulated.setTransactionLatency(overheadMicros, byteMicros);
+        BMP180Emulator bmp180Emulator = new BMP180Emulator();
+        BMP280Emulator bmp280Emulator = new BMP280Emulator(BMP280_ADDRESS, BMP280Emulator.DATASHEET_EXAMPLE);
+        TSL45315Emulator tslEmulator = new TSL45315Emulator();
+        simulated.attach(bmp180Emulator);
+        simulated.attach(bmp280Emulator);
+        simulated.attach(tslEmulator);
+        ManagedI2CBus bus = I2CBusManager.getInstance().register(SIMULATED_BUS, simulated);
+
+        bmp180Emulator.setTemperature(21.5);
+        bmp180Emulator.setPressure(98765);
+        bmp280Emulator.setTemperature(22.5);
+        bmp280Emulator.setPressure(99123);
+        tslEmulator.setLux(420);
+
+        bmp180 = new AdafruitBMP180(bus.getDevice(AdafruitBMP180.BMP180_ADDRESS));
+        bmp280 = new AdafruitBMP280(bus.getDevice(BMP280_ADDRESS));
+        tsl45315 = new TSL45315(bus.getDevice(TSL45315Emulator.ADDRESS));
+        // The first light value is available after one integration cycle
+        Thread.sleep(400);
+    }
+
+    @TearDown
+    public void tearDown() {
+        I2CBusManager.getInstance().shutdown();
+    }
+
+    @Benchmark
+    public AdafruitBMP280.Measurement bmp280TemperatureAndPressure() throws Exception {
+        return bmp280.readTemperatureAndPressure();
+    }
+
+    @Benchmark
+    public float bmp180Temperature() throws Exception {
+        return bmp180.readTemperature();
+    }
+
+    @Benchmark
+    public float bmp180Pressure() throws Exception {
+        return bmp180.readPressure();
+    }
+
+    @Benchmark
+    public double tsl45315Light() throws Exception {
+        return tsl45315.readValue();
+    }
+}
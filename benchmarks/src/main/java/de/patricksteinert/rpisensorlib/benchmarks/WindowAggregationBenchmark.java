@@ -0,0 +1,78 @@
+package de.patricksteinert.rpisensorlib.benchmarks;
+
+import de.patricksteinert.rpisensorlib.stream.SlidingWindow;
+import de.patricksteinert.rpisensorlib.stream.TumblingWindow;
+import de.patricksteinert.rpisensorlib.stream.WindowStatistics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one sample flowing through a sliding and a tumbling window of 10 Hz pressure
+ * readings. The cost must not grow with the window length.
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar WindowAggregationBenchmark -prof gc
+ * </pre>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowAggregationBenchmark {
+
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int VALUES = 4096;
+
+    // 1 minute and 1 hour at 10 Hz
+    @Param({"600", "36000"})
+    public int windowSamples;
+
+    private SlidingWindow sliding;
+    private TumblingWindow tumbling;
+    private final double[] values = new double[VALUES];
+    private long timestamp;
+    private int index;
+    private double completed;
+
+    @Setup
+    public void setUp() {
+        long windowNanos = windowSamples * PERIOD_NANOS;
+        sliding = new SlidingWindow(windowNanos, windowSamples);
+        tumbling = new TumblingWindow(windowNanos, this::onWindow);
+        Random random = new Random(42);
+        double pressure = 100000;
+        for (int i = 0; i < VALUES; i++) {
+            pressure += random.nextGaussian() * 2;
+            values[i] = pressure;
+        }
+    }
+
+    private void onWindow(WindowStatistics window) {
+        completed += window.getMean() + window.getQuantile(0.95);
+    }
+
+    @Benchmark
+    public double sliding() {
+        sliding.onSample(timestamp += PERIOD_NANOS, values[index++ & (VALUES - 1)]);
+        return sliding.getMax();
+    }
+
+    @Benchmark
+    public double tumbling() {
+        tumbling.onSample(timestamp += PERIOD_NANOS, values[index++ & (VALUES - 1)]);
+        return completed;
+    }
+}
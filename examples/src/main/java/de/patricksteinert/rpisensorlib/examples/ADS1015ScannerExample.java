@@ -0,0 +1,68 @@
+package de.patricksteinert.rpisensorlib.examples;
+
+import com.pi4j.gpio.extension.ads.ADS1015GpioProvider;
+import com.pi4j.gpio.extension.ads.ADS1x15GpioProvider.ProgrammableGainAmplifierValue;
+import de.patricksteinert.rpisensorlib.ADS1015Scanner;
+import de.patricksteinert.rpisensorlib.PollutionSensorADS1015;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.sim.ADS1015Emulator;
+import de.patricksteinert.rpisensorlib.sim.SimulatedI2CBus;
+import de.patricksteinert.rpisensorlib.stream.SampleRingBuffer;
+
+/**
+ * Scans three ADS1015 channels with different gains, one of them a differential pair, for one
+ * second at 3300 SPS and prints the last sample and the sample rate of each. The end of each
+ * conversion is taken from the ALERT/RDY pin, so every conversion is read exactly once. Runs
+ * against an emulated ADC.
+ */
+public class ADS1015ScannerExample {
+
+    private static final int SIMULATED_BUS = 46;
+    private static final int CAPACITY = 4096;
+
+    public static void main(String[] args) throws Exception {
+        SimulatedI2CBus simulated = new SimulatedI2CBus();
+        ADS1015Emulator emulator = new ADS1015Emulator();
+        simulated.attach(emulator);
+        ManagedI2CBus bus = I2CBusManager.getInstance().register(SIMULATED_BUS, simulated);
+
+        emulator.setInputVoltage(0, 3.3);
+        emulator.setInputVoltage(1, 1.2);
+        emulator.setInputVoltage(2, 0.25);
+        emulator.setInputVoltage(3, 0.1);
+
+        PollutionSensorADS1015 ads1015 = new PollutionSensorADS1015(bus, ADS1015GpioProvider.ADS1015_ADDRESS_0x48);
+        ADS1015Scanner scanner = ads1015.newScanner(ADS1015Scanner.DataRate.SPS_3300);
+        SampleRingBuffer a0 = scanner.addChannel(ADS1015Scanner.Input.A0, ProgrammableGainAmplifierValue.PGA_4_096V, CAPACITY);
+        SampleRingBuffer a1 = scanner.addChannel(ADS1015Scanner.Input.A1, ProgrammableGainAmplifierValue.PGA_2_048V, CAPACITY);
+        SampleRingBuffer a2a3 = scanner.addChannel(ADS1015Scanner.Input.A2_A3, ProgrammableGainAmplifierValue.PGA_0_256V, CAPACITY);
+        // On the Raspberry Pi: new GpioAlertReadyPin(GpioFactory.getInstance(), RaspiPin.GPIO_xx)
+        scanner.setAlertReadyPin(emulator.getAlertReadyPin());
+
+        long readsBefore = emulator.getConversionReads();
+        long start = System.nanoTime();
+        scanner.start();
+        Thread.sleep(1000);
+        scanner.stop();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        print("A0", a0, seconds);
+        print("A1", a1, seconds);
+        print("A2-A3", a2a3, seconds);
+        System.out.printf("Samples            : %d %n", scanner.getSampleCount());
+        System.out.printf("Result reads       : %d %n", emulator.getConversionReads() - readsBefore);
+        System.out.printf("Missed             : %d %n", scanner.getMissedCount());
+        System.out.printf("Errors             : %d %n", scanner.getErrorCount());
+
+        ads1015.shutdown();
+        I2CBusManager.getInstance().shutdown();
+    }
+
+    private static void print(String name, SampleRingBuffer buffer, double seconds) {
+        SampleRingBuffer.Reader reader = buffer.newReader();
+        reader.latest();
+        System.out.printf("%-19s: %.4f V, %.0f samples/s %n", name, reader.getValue(),
+                buffer.getPublishedCount() / seconds);
+    }
+}
@@ -0,0 +1,59 @@
+package de.patricksteinert.rpisensorlib.examples;
+
+import de.patricksteinert.rpisensorlib.AdafruitBMP280;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.cache.CachedReading;
+import de.patricksteinert.rpisensorlib.sim.BMP280Emulator;
+import de.patricksteinert.rpisensorlib.sim.SimulatedI2CBus;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Several threads read the BMP280 pressure through a cache with 200 ms max age. Reads arriving
+ * during a conversion share it, so the bus sees far fewer transactions than there are callers.
+ * Runs against an emulated sensor.
+ */
+public class CachedReadingExample {
+
+    private static final int SIMULATED_BUS = 45;
+    private static final int THREADS = 8;
+    private static final int READS = 50;
+
+    public static void main(String[] args) throws Exception {
+        SimulatedI2CBus simulated = new SimulatedI2CBus();
+        simulated.attach(new BMP280Emulator());
+        ManagedI2CBus bus = I2CBusManager.getInstance().register(SIMULATED_BUS, simulated);
+        AdafruitBMP280 bmp280 = new AdafruitBMP280(bus.getDevice(AdafruitBMP280.BMP280_ADDRESS));
+
+        final CachedReading<Double> pressure = new CachedReading<>(bmp280::readPressureAsync, 200);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final AtomicInteger failures = new AtomicInteger();
+        for (int t = 0; t < THREADS; t++) {
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < READS; i++) {
+                        pressure.get();
+                        Thread.sleep(10);
+                    }
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+
+        System.out.printf("Pressure           : %.2f hPa %n", pressure.get() / 100);
+        System.out.printf("Calls              : %d %n", THREADS * READS + 1);
+        System.out.printf("Hits               : %d %n", pressure.getHits());
+        System.out.printf("Misses (reads)     : %d %n", pressure.getMisses());
+        System.out.printf("Coalesced          : %d %n", pressure.getCoalesced());
+        System.out.printf("Failures           : %d %n", failures.get());
+
+        I2CBusManager.getInstance().shutdown();
+    }
+}
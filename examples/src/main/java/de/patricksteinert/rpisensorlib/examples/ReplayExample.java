@@ -0,0 +1,77 @@
+package de.patricksteinert.rpisensorlib.examples;
+
+import de.patricksteinert.rpisensorlib.AdafruitBMP280;
+import de.patricksteinert.rpisensorlib.BMP280Calibration;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.replay.ReplayClock;
+import de.patricksteinert.rpisensorlib.replay.ReplayEngine;
+import de.patricksteinert.rpisensorlib.sim.BMP280Emulator;
+import de.patricksteinert.rpisensorlib.sim.SimulatedI2CBus;
+import de.patricksteinert.rpisensorlib.store.SampleStore;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records a day of 10 Hz BMP280 raw values into a store and replays it through the driver
+ * as fast as possible, comparing the replayed pressure with the recorded one.
+ * An optional argument sets the replay speed, e.g. 3600 for an hour per second.
+ */
+public class ReplayExample {
+
+    private static final int SIMULATED_BUS = 44;
+    private static final int PRESSURE = 1;
+    private static final long PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int SAMPLES = 24 * 60 * 60 * 10;
+
+    public static void main(String[] args) throws Exception {
+        double speed = args.length > 0 ? Double.parseDouble(args[0]) : ReplayClock.AS_FAST_AS_POSSIBLE;
+        File directory = Files.createTempDirectory("replay").toFile();
+
+        // The recording: raw values of a slowly drifting sensor
+        BMP280Calibration calibration = BMP280Emulator.DATASHEET_EXAMPLE;
+        Random random = new Random(42);
+        int rawPressure = 415148;
+        int rawTemperature = 519888;
+        try (SampleStore recording = new SampleStore(directory)) {
+            for (int i = 0; i < SAMPLES; i++) {
+                rawPressure += random.nextInt(33) - 16;
+                rawTemperature += random.nextInt(9) - 4;
+                double pressure = calibration.compensatePressure(rawPressure, (double) calibration.computeTFine(rawTemperature));
+                recording.append(PRESSURE, i * PERIOD_NANOS, rawPressure, rawTemperature, pressure);
+            }
+        }
+
+        SampleStore store = new SampleStore(directory);
+        ReplayEngine engine = new ReplayEngine(store, speed);
+
+        // The driver runs on the virtual clock of the replay
+        SimulatedI2CBus simulated = new SimulatedI2CBus(engine.getClock());
+        final BMP280Emulator emulator = new BMP280Emulator();
+        simulated.attach(emulator);
+        ManagedI2CBus bus = I2CBusManager.getInstance().register(SIMULATED_BUS, simulated);
+        final AdafruitBMP280 bmp280 = new AdafruitBMP280(bus.getDevice(AdafruitBMP280.BMP280_ADDRESS));
+
+        final double[] maxDifference = new double[1];
+        engine.register(PRESSURE, record -> {
+            emulator.setRawPressure(record.getRaw1());
+            emulator.setRawTemperature(record.getRaw2());
+            double pressure = bmp280.readPressure();
+            maxDifference[0] = Math.max(maxDifference[0], Math.abs(pressure - record.getValue()));
+        });
+
+        long start = System.nanoTime();
+        long records = engine.run();
+        long elapsed = System.nanoTime() - start;
+        store.close();
+        I2CBusManager.getInstance().shutdown();
+
+        System.out.printf("Records replayed   : %d %n", records);
+        System.out.printf("Recorded time      : %.1f h %n", (double) SAMPLES * PERIOD_NANOS / TimeUnit.HOURS.toNanos(1));
+        System.out.printf("Replay time        : %.1f s %n", elapsed / 1e9);
+        System.out.printf("Max difference     : %.6f Pa %n", maxDifference[0]);
+    }
+}
@@ -0,0 +1,74 @@
+package de.patricksteinert.rpisensorlib.examples;
+
+import de.patricksteinert.rpisensorlib.AdafruitBMP280;
+import de.patricksteinert.rpisensorlib.BMP280Calibration;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.sim.BMP280Emulator;
+import de.patricksteinert.rpisensorlib.sim.SimulatedI2CBus;
+import de.patricksteinert.rpisensorlib.store.SampleCursor;
+import de.patricksteinert.rpisensorlib.store.SampleStore;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Stores BMP280 samples with their raw values, then scans the store and compensates the raw
+ * values again. Runs against an emulated sensor, the directory is given as argument or a
+ * temporary one is used.
+ */
+public class SampleStoreExample {
+
+    private static final int SIMULATED_BUS = 43;
+    private static final int TEMPERATURE = 1;
+    private static final int PRESSURE = 2;
+    private static final int SAMPLES = 100;
+
+    public static void main(String[] args) throws Exception {
+        File directory = args.length > 0 ? new File(args[0]) : Files.createTempDirectory("samples").toFile();
+
+        SimulatedI2CBus simulated = new SimulatedI2CBus();
+        BMP280Emulator emulator = new BMP280Emulator();
+        simulated.attach(emulator);
+        ManagedI2CBus bus = I2CBusManager.getInstance().register(SIMULATED_BUS, simulated);
+        AdafruitBMP280 bmp280 = new AdafruitBMP280(bus.getDevice(AdafruitBMP280.BMP280_ADDRESS));
+
+        // Small segments to show the rollover
+        try (SampleStore store = new SampleStore(directory, 64)) {
+            for (int i = 0; i < SAMPLES; i++) {
+                emulator.setTemperature(20 + i * 0.01);
+                emulator.setPressure(100000 + i);
+                Thread.sleep(10);
+                AdafruitBMP280.Measurement m = bmp280.readTemperatureAndPressure();
+                long now = System.nanoTime();
+                store.append(TEMPERATURE, now, m.getRawTemperature(), SampleStore.NO_RAW_VALUE, m.getTemperature());
+                store.append(PRESSURE, now, m.getRawPressure(), m.getRawTemperature(), m.getPressure());
+            }
+        }
+        I2CBusManager.getInstance().shutdown();
+
+        // Compensate the stored raw values again and compare them to the stored values
+        BMP280Calibration calibration = bmp280.getCalibration();
+        SampleStore store = new SampleStore(directory, 64);
+        SampleCursor cursor = store.newCursor();
+        int records = 0;
+        double maxDifference = 0;
+        double lastPressure = 0;
+        while (cursor.next()) {
+            records++;
+            if (cursor.getSensorId() == PRESSURE) {
+                double tFine = calibration.computeTFine(cursor.getRaw2());
+                double pressure = calibration.compensatePressure(cursor.getRaw1(), tFine);
+                maxDifference = Math.max(maxDifference, Math.abs(pressure - cursor.getValue()));
+                lastPressure = cursor.getValue();
+            }
+        }
+        store.close();
+
+        System.out.printf("Directory          : %s %n", directory);
+        System.out.printf("Segments           : %d %n", directory.list().length);
+        System.out.printf("Records            : %d %n", records);
+        System.out.printf("Last pressure      : %.2f hPa %n", lastPressure / 100);
+        System.out.printf("Max difference     : %.6f Pa %n", maxDifference);
+    }
+}
@@ -9,8 +9,9 @@ public class Sht15Example {
 
     public static void main(String[] args) throws InterruptedException {
         SHT15 sht15 = new SHT15();
-        double humidity = sht15.readHumidity();
-        double temperature = sht15.readTemperature();
+        SHT15.Measurement measurement = sht15.readTemperatureAndHumidity();
+        double humidity = measurement.getHumidity();
+        double temperature = measurement.getTemperature();
 
         System.out.println("SHT15 (humidity & temperature) Sensor read: " +
                 "Humidity: '" + humidity + "' %; Temperature: '" + temperature + "' °C");
@@ -0,0 +1,74 @@
+package de.patricksteinert.rpisensorlib.examples;
+
+import com.pi4j.gpio.extension.ads.ADS1015GpioProvider;
+import de.patricksteinert.rpisensorlib.AdafruitBMP180;
+import de.patricksteinert.rpisensorlib.AdafruitBMP280;
+import de.patricksteinert.rpisensorlib.PollutionSensorADS1015;
+import de.patricksteinert.rpisensorlib.SHT15;
+import de.patricksteinert.rpisensorlib.TSL45315;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.sim.ADS1015Emulator;
+import de.patricksteinert.rpisensorlib.sim.BMP180Emulator;
+import de.patricksteinert.rpisensorlib.sim.BMP280Emulator;
+import de.patricksteinert.rpisensorlib.sim.SHT15Emulator;
+import de.patricksteinert.rpisensorlib.sim.SimulatedI2CBus;
+import de.patricksteinert.rpisensorlib.sim.TSL45315Emulator;
+
+/**
+ * Reads all sensors from emulators, runs without a Raspberry Pi.
+ */
+public class SimulatedSensorsExample {
+
+    private static final int SIMULATED_BUS = 42;
+    private static final int BMP280_ADDRESS = 0x76;
+
+    public static void main(String[] args) throws Exception {
+        SimulatedI2CBus simulated = new SimulatedI2CBus();
+        BMP180Emulator bmp180Emulator = new BMP180Emulator();
+        BMP280Emulator bmp280Emulator = new BMP280Emulator(BMP280_ADDRESS, BMP280Emulator.DATASHEET_EXAMPLE);
+        TSL45315Emulator tslEmulator = new TSL45315Emulator();
+        ADS1015Emulator adsEmulator = new ADS1015Emulator();
+        simulated.attach(bmp180Emulator);
+        simulated.attach(bmp280Emulator);
+        simulated.attach(tslEmulator);
+        simulated.attach(adsEmulator);
+        ManagedI2CBus bus = I2CBusManager.getInstance().register(SIMULATED_BUS, simulated);
+
+        bmp180Emulator.setTemperature(21.5);
+        bmp180Emulator.setPressure(98765);
+        bmp280Emulator.setTemperature(22.5);
+        bmp280Emulator.setPressure(99123);
+        tslEmulator.setLux(420);
+        adsEmulator.setInputVoltage(0, 1.5);
+
+        AdafruitBMP180 bmp180 = new AdafruitBMP180(bus.getDevice(AdafruitBMP180.BMP180_ADDRESS));
+        System.out.printf("BMP180 Temperature : %.2f °C %n", bmp180.readTemperature());
+        System.out.printf("BMP180 Pressure    : %.2f hPa %n", bmp180.readPressure() / 100);
+
+        AdafruitBMP280 bmp280 = new AdafruitBMP280(bus.getDevice(BMP280_ADDRESS));
+        System.out.printf("BMP280 Chip ID     : %s %n", bmp280.readChipId());
+        System.out.printf("BMP280 Temperature : %.2f °C %n", bmp280.readTemperature());
+        System.out.printf("BMP280 Pressure    : %.2f hPa %n", bmp280.readPressure() / 100);
+
+        TSL45315 tsl45315 = new TSL45315(bus.getDevice(TSL45315Emulator.ADDRESS));
+        System.out.printf("TSL45315 Chip ID   : %s %n", tsl45315.readChipId());
+        // The first result is available after one integration cycle
+        Thread.sleep(400);
+        System.out.printf("TSL45315 Light     : %.0f Lux %n", tsl45315.readValue());
+
+        PollutionSensorADS1015 ads1015 = new PollutionSensorADS1015(bus, ADS1015GpioProvider.ADS1015_ADDRESS_0x48);
+        System.out.printf("ADS1015 A0         : %d %n", ads1015.readValue());
+        ads1015.shutdown();
+
+        SHT15Emulator shtEmulator = new SHT15Emulator();
+        shtEmulator.setTemperature(23.0);
+        shtEmulator.setHumidity(45.0);
+        SHT15 sht15 = new SHT15(shtEmulator);
+        SHT15.Measurement shtMeasurement = sht15.readTemperatureAndHumidity();
+        System.out.printf("SHT15 Temperature  : %.2f °C %n", shtMeasurement.getTemperature());
+        System.out.printf("SHT15 Humidity     : %.2f %% %n", shtMeasurement.getHumidity());
+
+        I2CBusManager.getInstance().shutdown();
+    }
+}
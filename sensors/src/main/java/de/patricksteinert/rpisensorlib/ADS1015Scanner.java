@@ -0,0 +1,370 @@
+package de.patricksteinert.rpisensorlib;
+
+import com.pi4j.gpio.extension.ads.ADS1x15GpioProvider.ProgrammableGainAmplifierValue;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CDevice;
+import de.patricksteinert.rpisensorlib.stream.SampleRingBuffer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples inputs of an ADS1015 on a thread of its own, writing the config and reading the
+ * conversion register directly. Each channel has its own input or differential pair and gain,
+ * and publishes its samples in volts to its own listener, usually a {@link SampleRingBuffer}.
+ * <p>
+ * A single channel runs in continuous conversion mode and is read at the data rate, the pointer
+ * stays on the conversion register so a sample takes one bus transaction. Several
+ * channels are converted one after the other in single-shot mode; each conversion waits the
+ * conversion time plus the 10% oscillator tolerance and the wake up time of the datasheet.
+ * <p>
+ * With the ALERT/RDY pin connected, see {@link #setAlertReadyPin(AlertReadyPin)}, the
+ * comparator signals the end of every conversion on the pin instead, and each falling edge
+ * is followed by exactly one read of the result: no margins, and the data rate of the chip
+ * rather than the timing of the host.
+ * <pre>
+ * ADS1015Scanner scanner = ads1015.newScanner(ADS1015Scanner.DataRate.SPS_3300);
+ * SampleRingBuffer co = scanner.addChannel(ADS1015Scanner.Input.A0, PGA_4_096V, 4096);
+ * SampleRingBuffer no2 = scanner.addChannel(ADS1015Scanner.Input.A2_A3, PGA_0_512V, 4096);
+ * scanner.start();
+ * </pre>
+ * The scanner holds the gate of the device while it runs.
+ */
+public class ADS1015Scanner {
+
+    private static final int POINTER_CONVERSION = 0x00;
+    private static final int POINTER_CONFIG = 0x01;
+    private static final int POINTER_LO_THRESH = 0x02;
+    private static final int POINTER_HI_THRESH = 0x03;
+
+    private static final int CONFIG_OS_SINGLE = 0x8000;
+    private static final int CONFIG_MODE_SINGLE = 0x0100;
+    private static final int CONFIG_COMPARATOR_DISABLE = 0x0003;
+    // Assert ALERT/RDY after one conversion, active low
+    private static final int CONFIG_COMPARATOR_READY = 0x0000;
+    // Conversion ready mode: high threshold negative, low threshold positive
+    private static final int HI_THRESH_READY = 0x8000;
+    private static final int LO_THRESH_READY = 0x0000;
+    // Single-shot mode and power down as after power up, without OS, which would start a conversion
+    private static final int CONFIG_IDLE = 0x0583;
+
+    private static final long WAKE_UP_NANOS = TimeUnit.MICROSECONDS.toNanos(25);
+    private static final long READY_TIMEOUT_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * Input multiplexer setting: a differential pair or an input against ground.
+     */
+    public enum Input {
+        A0_A1(0), A0_A3(1), A1_A3(2), A2_A3(3), A0(4), A1(5), A2(6), A3(7);
+
+        private final int mux;
+
+        Input(int mux) {
+            this.mux = mux;
+        }
+    }
+
+    /**
+     * Conversions per second.
+     */
+    public enum DataRate {
+        SPS_128(0, 128), SPS_250(1, 250), SPS_490(2, 490), SPS_920(3, 920),
+        SPS_1600(4, 1600), SPS_2400(5, 2400), SPS_3300(6, 3300);
+
+        private final int config;
+        private final int samplesPerSecond;
+
+        DataRate(int config, int samplesPerSecond) {
+            this.config = config;
+            this.samplesPerSecond = samplesPerSecond;
+        }
+
+        public int getSamplesPerSecond() {
+            return samplesPerSecond;
+        }
+
+        long getPeriodNanos() {
+            return (TimeUnit.SECONDS.toNanos(1) + samplesPerSecond - 1) / samplesPerSecond;
+        }
+    }
+
+    private static final class Channel {
+        private final Input input;
+        private final ProgrammableGainAmplifierValue gain;
+        private final SampleListener listener;
+
+        Channel(Input input, ProgrammableGainAmplifierValue gain, SampleListener listener) {
+            this.input = input;
+            this.gain = gain;
+            this.listener = listener;
+        }
+    }
+
+    private final ManagedI2CDevice device;
+    private final DeviceGate gate;
+    private final Sleeper sleeper;
+    private final DataRate dataRate;
+    private final List<Channel> channels = new ArrayList<Channel>();
+
+    private final byte[] configBuffer = new byte[2];
+    private final byte[] conversionBuffer = new byte[2];
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+
+    private AlertReadyPin alertReadyPin;
+    private boolean alertReadyConfigured;
+    private long readyEdges;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * @param device   the ADC
+     * @param dataRate conversions per second
+     */
+    public ADS1015Scanner(ManagedI2CDevice device, DataRate dataRate) {
+        this(device, new DeviceGate(), dataRate);
+    }
+
+    ADS1015Scanner(ManagedI2CDevice device, DeviceGate gate, DataRate dataRate) {
+        this.device = device;
+        this.gate = gate;
+        this.sleeper = device.getBus().getSleeper();
+        this.dataRate = dataRate;
+    }
+
+    /**
+     * Adds a channel; channels are sampled in the order they were added.
+     *
+     * @param input    the input or differential pair
+     * @param gain     full scale range of the channel
+     * @param listener receives the samples in volts, on the thread of the scanner
+     */
+    public synchronized void addChannel(Input input, ProgrammableGainAmplifierValue gain, SampleListener listener) {
+        if (thread != null)
+            throw new IllegalStateException("Scanner already started");
+        channels.add(new Channel(input, gain, listener));
+    }
+
+    /**
+     * Adds a channel publishing into a new ring buffer.
+     *
+     * @param input    the input or differential pair
+     * @param gain     full scale range of the channel
+     * @param capacity samples kept
+     * @return the buffer of the channel
+     */
+    public SampleRingBuffer addChannel(Input input, ProgrammableGainAmplifierValue gain, int capacity) {
+        SampleRingBuffer buffer = new SampleRingBuffer(capacity);
+        addChannel(input, gain, buffer);
+        return buffer;
+    }
+
+    /**
+     * Waits for the ALERT/RDY pin instead of the conversion time. The comparator is set to
+     * conversion ready mode, overwriting the threshold registers.
+     *
+     * @param alertReadyPin the pin the ALERT/RDY output of the ADC is connected to
+     */
+    public synchronized void setAlertReadyPin(AlertReadyPin alertReadyPin) {
+        if (thread != null)
+            throw new IllegalStateException("Scanner already started");
+        this.alertReadyPin = alertReadyPin;
+    }
+
+    /**
+     * Acquires the gate of the device and starts sampling.
+     */
+    public synchronized void start() throws InterruptedException {
+        if (thread != null)
+            throw new IllegalStateException("Scanner already started");
+        if (channels.isEmpty())
+            throw new IllegalStateException("No channels to scan");
+        gate.acquire();
+        running = true;
+        alertReadyConfigured = false;
+        thread = new Thread(this::run, "ads1015-scanner-" + device.getBus().getId()
+                + "-0x" + Integer.toHexString(device.getAddress()));
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops sampling after the conversion in progress, powers the ADC down and releases the
+     * gate. The scanner can be started again afterwards.
+     */
+    public void stop() throws InterruptedException {
+        Thread scanning;
+        synchronized (this) {
+            scanning = thread;
+        }
+        if (scanning == null)
+            return;
+        running = false;
+        scanning.join();
+        synchronized (this) {
+            if (thread == scanning)
+                thread = null;
+        }
+    }
+
+    /**
+     * @return number of samples published
+     */
+    public long getSampleCount() {
+        return samples.get();
+    }
+
+    /**
+     * @return number of failed conversions, the scanner continues with the next one
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    /**
+     * @return number of conversions completed without being read, because a listener or the
+     * bus was too slow for the data rate; only counted with the ALERT/RDY pin
+     */
+    public long getMissedCount() {
+        return missed.get();
+    }
+
+    private void run() {
+        int count = channels.size();
+        int comparator = alertReadyPin != null ? CONFIG_COMPARATOR_READY : CONFIG_COMPARATOR_DISABLE;
+        int[] configs = new int[count];
+        double[] voltsPerCode = new double[count];
+        SampleListener[] listeners = new SampleListener[count];
+        for (int i = 0; i < count; i++) {
+            Channel channel = channels.get(i);
+            configs[i] = (channel.input.mux << 12) | channel.gain.getConfigValue() | (dataRate.config << 5)
+                    | comparator;
+            voltsPerCode[i] = channel.gain.getVoltage() / 2048;
+            listeners[i] = channel.listener;
+        }
+
+        try {
+            if (count == 1)
+                scanContinuous(configs[0], voltsPerCode[0], listeners[0]);
+            else
+                scanSingleShot(configs, voltsPerCode, listeners);
+        } catch (InterruptedException e) {
+            // Not interrupted by stop(), which lets the conversion in progress complete
+        } finally {
+            try {
+                writeConfig(CONFIG_IDLE);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            gate.release();
+        }
+    }
+
+    private void scanContinuous(int config, double voltsPerCode, SampleListener listener) throws InterruptedException {
+        long period = dataRate.getPeriodNanos();
+        long next = 0;
+        boolean configured = false;
+        while (running) {
+            try {
+                if (!configured) {
+                    startConversions(config);
+                    device.write((byte) POINTER_CONVERSION);
+                    configured = true;
+                    next = sleeper.nanoTime() + WAKE_UP_NANOS + period;
+                }
+                if (alertReadyPin != null)
+                    awaitReady();
+                else
+                    sleepUntil(next);
+                publish(device.read(conversionBuffer, 0, 2), voltsPerCode, listener);
+            } catch (IOException e) {
+                errors.incrementAndGet();
+                configured = false;
+                alertReadyConfigured = false;
+            }
+            next += period;
+            // Fell behind, e.g. the bus was busy: continue from now instead of catching up
+            if (sleeper.nanoTime() - next > period)
+                next = sleeper.nanoTime() + period;
+        }
+    }
+
+    private void scanSingleShot(int[] configs, double[] voltsPerCode, SampleListener[] listeners)
+            throws InterruptedException {
+        long conversion = WAKE_UP_NANOS + dataRate.getPeriodNanos() * 11 / 10;
+        while (running) {
+            for (int i = 0; i < configs.length && running; i++) {
+                try {
+                    startConversions(configs[i] | CONFIG_OS_SINGLE | CONFIG_MODE_SINGLE);
+                    if (alertReadyPin != null)
+                        awaitReady();
+                    else
+                        sleepUntil(sleeper.nanoTime() + conversion);
+                    publish(device.read(POINTER_CONVERSION, conversionBuffer, 0, 2), voltsPerCode[i], listeners[i]);
+                } catch (IOException e) {
+                    errors.incrementAndGet();
+                    alertReadyConfigured = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the config, which starts the conversions, after setting up the comparator for
+     * the ALERT/RDY pin if needed. The edge count is taken first, so no edge of the new
+     * conversions is missed.
+     */
+    private void startConversions(int config) throws IOException {
+        if (alertReadyPin != null) {
+            if (!alertReadyConfigured) {
+                writeRegister(POINTER_LO_THRESH, LO_THRESH_READY);
+                writeRegister(POINTER_HI_THRESH, HI_THRESH_READY);
+                alertReadyConfigured = true;
+            }
+            readyEdges = alertReadyPin.getEdgeCount();
+        }
+        writeConfig(config);
+    }
+
+    /**
+     * Waits for the next falling edge of the ALERT/RDY pin, counting the conversions that
+     * completed unread.
+     */
+    private void awaitReady() throws IOException, InterruptedException {
+        long timeout = 2 * dataRate.getPeriodNanos() + READY_TIMEOUT_MARGIN_NANOS;
+        long edges = alertReadyPin.awaitEdge(readyEdges, timeout);
+        if (edges == readyEdges)
+            throw new IOException("No conversion ready signal from ADS1015 within " + timeout + " ns");
+        missed.addAndGet(edges - readyEdges - 1);
+        readyEdges = edges;
+    }
+
+    private void writeConfig(int config) throws IOException {
+        writeRegister(POINTER_CONFIG, config);
+    }
+
+    private void writeRegister(int pointer, int value) throws IOException {
+        configBuffer[0] = (byte) (value >> 8);
+        configBuffer[1] = (byte) value;
+        device.write(pointer, configBuffer, 0, 2);
+    }
+
+    private void publish(int read, double voltsPerCode, SampleListener listener) throws IOException {
+        if (read != 2)
+            throw new IOException("Short read of ADS1015 conversion register: " + read + " of 2 bytes");
+        // 12 bit two's complement, left aligned
+        int code = (short) (((conversionBuffer[0] & 0xFF) << 8) | (conversionBuffer[1] & 0xFF)) >> 4;
+        listener.onSample(sleeper.nanoTime(), code * voltsPerCode);
+        samples.incrementAndGet();
+    }
+
+    private void sleepUntil(long deadline) throws InterruptedException {
+        long wait = deadline - sleeper.nanoTime();
+        if (wait > 0)
+            sleeper.sleepNanos(wait);
+    }
+}
@@ -1,10 +1,13 @@
 package de.patricksteinert.rpisensorlib;
 
 import com.pi4j.io.i2c.I2CBus;
-import com.pi4j.io.i2c.I2CDevice;
-import com.pi4j.io.i2c.I2CFactory;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CDevice;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /*
  * Altitude, Pressure, Temperature
@@ -52,24 +55,26 @@ public class AdafruitBMP180
     public final static int BMP180_PRESSUREDATA      = 0xF6;
     public final static int BMP180_READTEMPCMD       = 0x2E;
     public final static int BMP180_READPRESSURECMD   = 0x34;
+    public final static int BMP180_CONTROL_SCO       = 0x20;  // Start of conversion, cleared when done
 
-    private int cal_AC1 = 0;
-    private int cal_AC2 = 0;
-    private int cal_AC3 = 0;
-    private int cal_AC4 = 0;
-    private int cal_AC5 = 0;
-    private int cal_AC6 = 0;
-    private int cal_B1  = 0;
-    private int cal_B2  = 0;
-    private int cal_MB  = 0;
-    private int cal_MC  = 0;
-    private int cal_MD  = 0;
+    private BMP180Calibration calibration;
 
     private static boolean verbose = false;
 
-    private I2CBus bus;
-    private I2CDevice bmp180;
-    private int mode = BMP180_STANDARD;
+    private ManagedI2CBus bus;
+    private ManagedI2CDevice bmp180;
+    private volatile int mode = BMP180_STANDARD;
+    private final ConversionPoller conversionPoller = new ConversionPoller();
+    private final DeviceGate gate = new DeviceGate();
+    private final byte[] dataBuffer = new byte[3];
+
+    // Temperature (B5) cache used by readPressure(), guarded by the gate
+    private volatile int temperatureRefreshSamples = 1;
+    private volatile long temperatureRefreshNanos = 0;
+    private boolean b5Valid = false;
+    private int cachedB5;
+    private long cachedB5Nanos;
+    private int samplesSinceTemperature;
 
     public AdafruitBMP180()
     {
@@ -81,18 +86,12 @@ public class AdafruitBMP180
         try
         {
             // Get i2c bus
-            bus = I2CFactory.getInstance(I2CBus.BUS_1); // Depends onthe RasPI version
+            bus = I2CBusManager.getInstance().getBus(I2CBus.BUS_1); // Depends onthe RasPI version
             if (verbose)
                 System.out.println("Connected to bus. OK.");
 
             // Get device itself
-            bmp180 = bus.getDevice(address);
-            if (verbose)
-                System.out.println("Connected to device. OK.");
-
-            try { this.readCalibrationData(); }
-            catch (Exception ex)
-            { ex.printStackTrace(); }
+            init(bus.getDevice(address));
         }
         catch (IOException e)
         {
@@ -100,101 +99,70 @@ public class AdafruitBMP180
         }
     }
 
-    private int readU8(int reg) throws Exception
+    /**
+     * @param device the sensor, e.g. on a simulated bus
+     */
+    public AdafruitBMP180(ManagedI2CDevice device)
     {
-        // "Read an unsigned byte from the I2C device"
-        int result = 0;
-        try
-        {
-            result = this.bmp180.read(reg);
-            if (verbose)
-                System.out.println("I2C: Device " + BMP180_ADDRESS + " returned " + result + " from reg " + reg);
-        }
-        catch (Exception ex)
-        { ex.printStackTrace(); }
-        return result;
+        init(device);
     }
 
-    private int readS8(int reg) throws Exception
+    private void init(ManagedI2CDevice device)
     {
-        // "Reads a signed byte from the I2C device"
-        int result = 0;
-        try
-        {
-            result = this.bmp180.read(reg);
-            if (result > 127)
-                result -= 256;
-            if (verbose)
-                System.out.println("I2C: Device " + BMP180_ADDRESS + " returned " + result + " from reg " + reg);
-        }
+        bus = device.getBus();
+        bmp180 = device;
+        if (verbose)
+            System.out.println("Connected to device. OK.");
+
+        try { this.readCalibrationData(); }
         catch (Exception ex)
         { ex.printStackTrace(); }
-        return result;
-    }
-
-    private int readU16(int register) throws Exception
-    {
-        int hi = this.readU8(register);
-        int lo = this.readU8(register + 1);
-        return (BMP180_ENDIANNESS == BIG_ENDIAN) ? (hi << 8) + lo : (lo << 8) + hi; // Big Endian
-    }
-
-    private int readS16(int register) throws Exception
-    {
-        int hi = 0, lo = 0;
-        if (BMP180_ENDIANNESS == BIG_ENDIAN)
-        {
-            hi = this.readS8(register);
-            lo = this.readU8(register + 1);
-        }
-        else
-        {
-            lo = this.readS8(register);
-            hi = this.readU8(register + 1);
-        }
-        return (hi << 8) + lo;
     }
 
+    /**
+     * Reads the calibration block (0xAA..0xBF) in one I2C transaction.
+     *
+     * @throws Exception if sensor communication fails.
+     */
     public void readCalibrationData() throws Exception
     {
-        // Reads the calibration data from the IC
-        cal_AC1 = readS16(BMP180_CAL_AC1);   // INT16
-        cal_AC2 = readS16(BMP180_CAL_AC2);   // INT16
-        cal_AC3 = readS16(BMP180_CAL_AC3);   // INT16
-        cal_AC4 = readU16(BMP180_CAL_AC4);   // UINT16
-        cal_AC5 = readU16(BMP180_CAL_AC5);   // UINT16
-        cal_AC6 = readU16(BMP180_CAL_AC6);   // UINT16
-        cal_B1 =  readS16(BMP180_CAL_B1);    // INT16
-        cal_B2 =  readS16(BMP180_CAL_B2);    // INT16
-        cal_MB =  readS16(BMP180_CAL_MB);    // INT16
-        cal_MC =  readS16(BMP180_CAL_MC);    // INT16
-        cal_MD =  readS16(BMP180_CAL_MD);    // INT16
+        byte[] block = new byte[BMP180Calibration.LENGTH];
+        int read = bmp180.read(BMP180Calibration.REGISTER_START, block, 0, block.length);
+        if (read != block.length)
+            throw new IOException("Short read of BMP180 calibration data: " + read + " of " + block.length + " bytes");
+        calibration = BMP180Calibration.fromRegisters(block, 0);
         if (verbose)
             showCalibrationData();
     }
 
+    /**
+     * @return the calibration read from the sensor.
+     */
+    public BMP180Calibration getCalibration()
+    {
+        return calibration;
+    }
+
     private void showCalibrationData()
     {
         // Displays the calibration values for debugging purposes
-        System.out.println("DBG: AC1 = " + cal_AC1);
-        System.out.println("DBG: AC2 = " + cal_AC2);
-        System.out.println("DBG: AC3 = " + cal_AC3);
-        System.out.println("DBG: AC4 = " + cal_AC4);
-        System.out.println("DBG: AC5 = " + cal_AC5);
-        System.out.println("DBG: AC6 = " + cal_AC6);
-        System.out.println("DBG: B1  = " + cal_B1);
-        System.out.println("DBG: B2  = " + cal_B2);
-        System.out.println("DBG: MB  = " + cal_MB);
-        System.out.println("DBG: MC  = " + cal_MC);
-        System.out.println("DBG: MD  = " + cal_MD);
+        System.out.println("DBG: AC1 = " + calibration.getAC1());
+        System.out.println("DBG: AC2 = " + calibration.getAC2());
+        System.out.println("DBG: AC3 = " + calibration.getAC3());
+        System.out.println("DBG: AC4 = " + calibration.getAC4());
+        System.out.println("DBG: AC5 = " + calibration.getAC5());
+        System.out.println("DBG: AC6 = " + calibration.getAC6());
+        System.out.println("DBG: B1  = " + calibration.getB1());
+        System.out.println("DBG: B2  = " + calibration.getB2());
+        System.out.println("DBG: MB  = " + calibration.getMB());
+        System.out.println("DBG: MC  = " + calibration.getMC());
+        System.out.println("DBG: MD  = " + calibration.getMD());
     }
 
     public int readRawTemp() throws Exception
     {
         // Reads the raw (uncompensated) temperature from the sensor
-        bmp180.write(BMP180_CONTROL, (byte)BMP180_READTEMPCMD);
-        waitfor(5);  // Wait 5ms
-        int raw = readU16(BMP180_TEMPDATA);
+        int raw = (int) PhasedReads.run(new ConversionRead(READ_RAW_TEMPERATURE));
         if (verbose)
             System.out.println("DBG: Raw Temp: " + (raw & 0xFFFF) + ", " + raw);
         return raw;
@@ -203,24 +171,24 @@ public class AdafruitBMP180
     public int readRawPressure() throws Exception
     {
         // Reads the raw (uncompensated) pressure level from the sensor
-        bmp180.write(BMP180_CONTROL, (byte)(BMP180_READPRESSURECMD + (this.mode << 6)));
-        if (this.mode == BMP180_ULTRALOWPOWER)
-            waitfor(5);
-        else if (this.mode == BMP180_HIGHRES)
-            waitfor(14);
-        else if (this.mode == BMP180_ULTRAHIGHRES)
-            waitfor(26);
-        else
-            waitfor(8);
-        int msb = bmp180.read(BMP180_PRESSUREDATA);
-        int lsb = bmp180.read(BMP180_PRESSUREDATA + 1);
-        int xlsb = bmp180.read(BMP180_PRESSUREDATA + 2);
-        int raw = ((msb << 16) + (lsb << 8) + xlsb) >> (8 - this.mode);
+        int raw = (int) PhasedReads.run(new ConversionRead(READ_RAW_PRESSURE));
         if (verbose)
             System.out.println("DBG: Raw Pressure: " + (raw & 0xFFFF) + ", " + raw);
         return raw;
     }
 
+    /**
+     * Configures how the driver waits for a conversion: the control register is polled
+     * every {@code pollIntervalMicros} until the start of conversion bit is cleared.
+     *
+     * @param pollIntervalMicros time between two control register reads in microseconds
+     * @param timeoutMillis      time after which the conversion is considered failed
+     */
+    public void setConversionPolling(long pollIntervalMicros, long timeoutMillis)
+    {
+        conversionPoller.configure(pollIntervalMicros, timeoutMillis);
+    }
+
     /**
      * Converts temperature from Celsius to Fahrenheit.
      *
@@ -230,127 +198,214 @@ public class AdafruitBMP180
     public static double convertCelsiusToFahrenheit(double temperature) {
         return temperature * 1.8 + 32;
     }
+    /**
+     * Sets the oversampling mode used for pressure conversions.
+     *
+     * @param mode one of BMP180_ULTRALOWPOWER, BMP180_STANDARD, BMP180_HIGHRES, BMP180_ULTRAHIGHRES
+     */
+    public void setMode(int mode)
+    {
+        if (mode < BMP180_ULTRALOWPOWER || mode > BMP180_ULTRAHIGHRES)
+            throw new IllegalArgumentException("Invalid BMP180 mode: " + mode);
+        this.mode = mode;
+    }
+
+    public int getMode()
+    {
+        return mode;
+    }
+
+    /**
+     * Configures how often readPressure() refreshes the temperature it needs for the
+     * compensation. Temperature changes slowly, so reusing it for several pressure samples
+     * saves a temperature conversion per sample. The temperature is refreshed when either
+     * limit is reached. The default (1, 0) reads the temperature before every pressure sample.
+     *
+     * @param everySamples  refresh at least every n pressure samples
+     * @param maxAgeMillis  refresh when the temperature is older than this, 0 to disable
+     */
+    public void setTemperatureRefresh(int everySamples, long maxAgeMillis)
+    {
+        if (everySamples < 1 || maxAgeMillis < 0)
+            throw new IllegalArgumentException("Invalid temperature refresh: " + everySamples + " samples, " + maxAgeMillis + " ms");
+        this.temperatureRefreshSamples = everySamples;
+        this.temperatureRefreshNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+    }
+
     public float readTemperature() throws Exception
     {
         // Gets the compensated temperature in degrees celcius
-        int UT = 0;
-        int X1 = 0;
-        int X2 = 0;
-        int B5 = 0;
-        float temp = 0.0f;
-
-        // Read raw temp before aligning it with the calibration values
-        UT = this.readRawTemp();
-        X1 = ((UT - this.cal_AC6) * this.cal_AC5) >> 15;
-        X2 = (this.cal_MC << 11) / (X1 + this.cal_MD);
-        B5 = X1 + X2;
-        temp = ((B5 + 8) >> 4) / 10.0f;
+        float temp = (float) PhasedReads.run(new ConversionRead(READ_TEMPERATURE));
         if (verbose)
             System.out.println("DBG: Calibrated temperature = " + temp + " C");
         return temp;
     }
 
+    /**
+     * Reads the compensated pressure. The temperature is taken from the cache set up with
+     * {@link #setTemperatureRefresh(int, long)}.
+     *
+     * @return the pressure in Pa
+     * @throws Exception if sensor communication fails
+     */
     public float readPressure() throws Exception
     {
-        // Gets the compensated pressure in pascal
-        int UT = 0;
-        int UP = 0;
-        int B3 = 0;
-        int B5 = 0;
-        int B6 = 0;
-        int X1 = 0;
-        int X2 = 0;
-        int X3 = 0;
-        int p = 0;
-        int B4 = 0;
-        int B7 = 0;
-
-        UT = this.readRawTemp();
-        UP = this.readRawPressure();
-
-        // You can use the datasheet values to test the conversion results
-        // boolean dsValues = true;
-        boolean dsValues = false;
-
-        if (dsValues)
+        return (float) PhasedReads.run(new ConversionRead(READ_PRESSURE));
+    }
+
+    /**
+     * Reads the temperature without blocking the caller.
+     *
+     * @return future completed with the temperature in degrees celcius
+     * @see PhasedReads#runAsync(PhasedRead)
+     */
+    public CompletableFuture<Float> readTemperatureAsync()
+    {
+        return PhasedReads.runAsync(new ConversionRead(READ_TEMPERATURE)).thenApply(read -> (float) read.getValue());
+    }
+
+    /**
+     * Reads the pressure without blocking the caller.
+     *
+     * @return future completed with the pressure in Pa
+     * @see #readPressure()
+     */
+    public CompletableFuture<Float> readPressureAsync()
+    {
+        return PhasedReads.runAsync(new ConversionRead(READ_PRESSURE)).thenApply(read -> (float) read.getValue());
+    }
+
+    /**
+     * Returns a phased read of the pressure for the
+     * {@link de.patricksteinert.rpisensorlib.scheduler.SensorScheduler}. When the cached
+     * temperature is stale the read runs a temperature conversion first.
+     *
+     * @return a new phased read delivering the pressure in Pa
+     */
+    public PhasedRead pressureRead()
+    {
+        return new ConversionRead(READ_PRESSURE);
+    }
+
+    /**
+     * @return a new phased read delivering the temperature in Celsius
+     * @see #pressureRead()
+     */
+    public PhasedRead temperatureRead()
+    {
+        return new ConversionRead(READ_TEMPERATURE);
+    }
+
+    private boolean isB5Stale()
+    {
+        return !b5Valid
+                || samplesSinceTemperature >= temperatureRefreshSamples
+                || (temperatureRefreshNanos > 0 && bus.getSleeper().nanoTime() - cachedB5Nanos > temperatureRefreshNanos);
+    }
+
+    private static final int READ_RAW_TEMPERATURE = 0;
+    private static final int READ_TEMPERATURE = 1;
+    private static final int READ_RAW_PRESSURE = 2;
+    private static final int READ_PRESSURE = 3;
+
+    /**
+     * Temperature and/or pressure conversion, polling the SCO bit until each is done.
+     */
+    private final class ConversionRead implements PhasedRead
+    {
+        private final int target;
+        private int conversionMode;
+        private boolean convertingPressure;
+        private long startNanos;
+        private double value;
+
+        ConversionRead(int target)
         {
-            UT = 27898;
-            UP = 23843;
-            this.cal_AC6 = 23153;
-            this.cal_AC5 = 32757;
-            this.cal_MB = -32768;
-            this.cal_MC = -8711;
-            this.cal_MD = 2868;
-            this.cal_B1 = 6190;
-            this.cal_B2 = 4;
-            this.cal_AC3 = -14383;
-            this.cal_AC2 = -72;
-            this.cal_AC1 = 408;
-            this.cal_AC4 = 32741;
-            this.mode = BMP180_ULTRALOWPOWER;
-            if (verbose)
-                this.showCalibrationData();
+            this.target = target;
         }
-        // True Temperature Calculations
-        X1 = (int)((UT - this.cal_AC6) * this.cal_AC5) >> 15;
-        X2 = (this.cal_MC << 11) / (X1 + this.cal_MD);
-        B5 = X1 + X2;
-        if (verbose)
+
+        @Override
+        public long trigger() throws IOException
         {
-            System.out.println("DBG: X1 = " + X1);
-            System.out.println("DBG: X2 = " + X2);
-            System.out.println("DBG: B5 = " + B5);
-            System.out.println("DBG: True Temperature = " + (((B5 + 8) >> 4) / 10.0)  + " C");
+            conversionMode = mode;
+            if (target == READ_RAW_PRESSURE || (target == READ_PRESSURE && !isB5Stale()))
+                return startConversion(true);
+            return startConversion(false);
         }
-        // Pressure Calculations
-        B6 = B5 - 4000;
-        X1 = (this.cal_B2 * (B6 * B6) >> 12) >> 11;
-        X2 = (this.cal_AC2 * B6) >> 11;
-        X3 = X1 + X2;
-        B3 = (((this.cal_AC1 * 4 + X3) << this.mode) + 2) / 4;
-        if (verbose)
+
+        private long startConversion(boolean pressure) throws IOException
         {
-            System.out.println("DBG: B6 = " + B6);
-            System.out.println("DBG: X1 = " + X1);
-            System.out.println("DBG: X2 = " + X2);
-            System.out.println("DBG: X3 = " + X3);
-            System.out.println("DBG: B3 = " + B3);
+            int command = pressure ? BMP180_READPRESSURECMD + (conversionMode << 6) : BMP180_READTEMPCMD;
+            bmp180.write(BMP180_CONTROL, (byte) command);
+            convertingPressure = pressure;
+            startNanos = bus.getSleeper().nanoTime();
+            return conversionPoller.getPollIntervalNanos();
         }
-        X1 = (this.cal_AC3 * B6) >> 13;
-        X2 = (this.cal_B1 * ((B6 * B6) >> 12)) >> 16;
-        X3 = ((X1 + X2) + 2) >> 2;
-        B4 = (this.cal_AC4 * (X3 + 32768)) >> 15;
-        B7 = (UP - B3) * (50000 >> this.mode);
-        if (verbose)
+
+        @Override
+        public long collect() throws IOException
         {
-            System.out.println("DBG: X1 = " + X1);
-            System.out.println("DBG: X2 = " + X2);
-            System.out.println("DBG: X3 = " + X3);
-            System.out.println("DBG: B4 = " + B4);
-            System.out.println("DBG: B7 = " + B7);
+            if ((bmp180.read(BMP180_CONTROL) & BMP180_CONTROL_SCO) != 0)
+                return conversionPoller.nextPoll(bus.getSleeper().nanoTime() - startNanos, BMP180_CONTROL);
+
+            if (!convertingPressure)
+            {
+                int UT = readData(2);
+                cachedB5 = calibration.computeB5(UT);
+                cachedB5Nanos = bus.getSleeper().nanoTime();
+                samplesSinceTemperature = 0;
+                b5Valid = true;
+                if (target == READ_PRESSURE)
+                    return startConversion(true);
+                value = target == READ_RAW_TEMPERATURE ? UT : BMP180Calibration.temperatureFromB5(cachedB5);
+                return COMPLETE;
+            }
+
+            int UP = readData(3) >> (8 - conversionMode);
+            if (target == READ_PRESSURE)
+            {
+                samplesSinceTemperature++;
+                value = calibration.compensatePressure(UP, cachedB5, conversionMode);
+            }
+            else
+                value = UP;
+            return COMPLETE;
         }
-        if (B7 < 0x80000000)
-            p = (B7 * 2) / B4;
-        else
-            p = (B7 / B4) * 2;
 
-        if (verbose)
-            System.out.println("DBG: X1 = " + X1);
+        private int readData(int length) throws IOException
+        {
+            int read = bmp180.read(BMP180_TEMPDATA, dataBuffer, 0, length);
+            if (read != length)
+                throw new IOException("Short read of BMP180 data: " + read + " of " + length + " bytes");
+            int raw = 0;
+            for (int i = 0; i < length; i++)
+                raw = (raw << 8) + (dataBuffer[i] & 0xFF);
+            return raw;
+        }
 
-        X1 = (p >> 8) * (p >> 8);
-        X1 = (X1 * 3038) >> 16;
-        X2 = (-7357 * p) >> 16;
-        if (verbose)
+        @Override
+        public double getValue()
         {
-            System.out.println("DBG: p  = " + p);
-            System.out.println("DBG: X1 = " + X1);
-            System.out.println("DBG: X2 = " + X2);
+            return value;
         }
-        p = p + ((X1 + X2 + 3791) >> 4);
-        if (verbose)
-            System.out.println("DBG: Pressure = " + p + " Pa");
 
-        return p;
+        @Override
+        public DeviceGate getGate()
+        {
+            return gate;
+        }
+
+        @Override
+        public String getBusId()
+        {
+            return bus.getId();
+        }
+
+        @Override
+        public Sleeper getSleeper()
+        {
+            return bus.getSleeper();
+        }
     }
 
     private int standardSeaLevelPressure = 101325;
@@ -373,7 +428,7 @@ public class AdafruitBMP180
 
     protected static void waitfor(long howMuch)
     {
-        try { Thread.sleep(howMuch); } catch (InterruptedException ie) { ie.printStackTrace(); }
+        try { Sleeper.SYSTEM.sleepNanos(TimeUnit.MILLISECONDS.toNanos(howMuch)); } catch (InterruptedException ie) { ie.printStackTrace(); }
     }
 
 
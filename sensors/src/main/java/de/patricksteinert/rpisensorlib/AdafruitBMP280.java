@@ -1,10 +1,13 @@
 package de.patricksteinert.rpisensorlib;
 
 import com.pi4j.io.i2c.I2CBus;
-import com.pi4j.io.i2c.I2CDevice;
-import com.pi4j.io.i2c.I2CFactory;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CDevice;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 /*
  * Altitude, Pressure, Temperature
@@ -44,6 +47,7 @@ public class AdafruitBMP280 {
     // BMP280 Registers
     private static final int BMP280_CHIP_ID = 0xD0;  // R Chip Id 0x58 (8 bits)
     private static final int BMP280_RESET = 0xE0;  // R always 0x00 W 0xB6 to Force Reset (8 bits);
+    private static final int BMP280_STATUS = 0xF3;  // 3 measuring 0 im_update (8 bits);
     private static final int BMP280_CONTROL = 0xF4;  // 7,6,5 osrsT 4,3,2 osrsP 1,0 mode(8 bits);
     private static final int BMP280_CONFIG = 0xF5;  // 7,6,5 t_sb 4,3,2 filter 0 spi3w_en;
     private static final int BMP280_PRESSURE_MSB = 0xF7;
@@ -52,6 +56,8 @@ public class AdafruitBMP280 {
     private static final int BMP280_TEMP_MSB = 0xFA;
     private static final int BMP280_TEMP_LSB = 0xFB;
     private static final int BMP280_TEMP_XLSB = 0xFC;
+    private static final int BMP280_DATA_LENGTH = 6; // 0xF7..0xFC pressure and temperature
+    private static final int BMP280_STATUS_MEASURING = 0x08;
 
     private static final int BMP280_DIG_T1 = 0x88;  // R   Unsigned Calibration data (16 bits);
     private static final int BMP280_DIG_T2 = 0x8A;  // R   Signed Calibration data (16 bits);
@@ -68,24 +74,14 @@ public class AdafruitBMP280 {
 
     private static boolean verbose = false;
 
-    private static final int osrsT = BMP280_SAMPLE_1;
-    private static final int osrsP = BMP280_SAMPLE_4;
-
-    private I2CBus bus;
-    private I2CDevice bmp280;
-    private int cal_t1 = 0;
-    private int cal_t2 = 0;
-    private int cal_t3 = 0;
-    private int cal_p1 = 0;
-    private int cal_p2 = 0;
-    private int cal_p3 = 0;
-    private int cal_p4 = 0;
-    private int cal_p5 = 0;
-    private int cal_p6 = 0;
-    private int cal_p7 = 0;
-    private int cal_p8 = 0;
-    private int cal_p9 = 0;
-    private int mode = BMP280_NORMAL_MODE;
+    private ManagedI2CBus bus;
+    private ManagedI2CDevice bmp280;
+    private final byte[] dataBuffer = new byte[BMP280_DATA_LENGTH];
+    private final DeviceGate gate = new DeviceGate();
+    private BMP280Calibration calibration;
+    private final ConversionPoller conversionPoller = new ConversionPoller();
+    private volatile BMP280Profile profile = BMP280Profile.DEFAULT;
+    private volatile long firstResultNanos;
 
     private static int standardSeaLevelPressure = 101325;
 
@@ -96,24 +92,35 @@ public class AdafruitBMP280 {
     public AdafruitBMP280(int address) {
         try {
             // Get i2c bus
-            bus = I2CFactory.getInstance(I2CBus.BUS_1); // Depends onthe RasPI version
+            bus = I2CBusManager.getInstance().getBus(I2CBus.BUS_1); // Depends onthe RasPI version
             if (verbose)
                 System.out.println("Connected to bus. OK.");
 
             // Get device itself
-            bmp280 = bus.getDevice(address);
-            if (verbose)
-                System.out.println("Connected to device. OK.");
+            init(bus.getDevice(address));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
 
-            try {
-                this.readCalibrationData();
-            } catch (Exception ex) {
-                ex.printStackTrace();
-            }
+    /**
+     * @param device the sensor, e.g. on a simulated bus
+     */
+    public AdafruitBMP280(ManagedI2CDevice device) {
+        init(device);
+    }
 
+    private void init(ManagedI2CDevice device) {
+        bus = device.getBus();
+        bmp280 = device;
+        if (verbose)
+            System.out.println("Connected to device. OK.");
 
-        } catch (IOException e) {
-            System.err.println(e.getMessage());
+        try {
+            this.readCalibrationData();
+            this.setProfile(profile);
+        } catch (Exception ex) {
+            ex.printStackTrace();
         }
     }
 
@@ -145,64 +152,79 @@ public class AdafruitBMP280 {
         return result;
     }
 
-    private int readU16(int register) throws Exception {
-        int hi = this.readU8(register);
-        int lo = this.readU8(register + 1);
-        return (BMP280_ENDIANNESS == BIG_ENDIAN) ? (hi << 8) + lo : (lo << 8) + hi; // Big Endian
-    }
+    /**
+     * Reads the calibration block (0x88..0x9F) in one I2C transaction.
+     *
+     * @throws Exception if sensor communication fails.
+     */
+    public void readCalibrationData() throws Exception {
+        byte[] block = new byte[BMP280Calibration.LENGTH];
+        int read = bmp280.read(BMP280Calibration.REGISTER_START, block, 0, block.length);
+        if (read != block.length)
+            throw new IOException("Short read of BMP280 calibration data: " + read + " of " + block.length + " bytes");
+        calibration = BMP280Calibration.fromRegisters(block, 0);
 
-    private int readS16(int register) throws Exception {
-        int hi = 0, lo = 0;
-        if (BMP280_ENDIANNESS == BIG_ENDIAN) {
-            hi = this.readU8(register);
-            lo = this.readU8(register + 1);
-        } else {
-            lo = this.readU8(register);
-            hi = this.readU8(register + 1);
-        }
-        int value = (hi << 8) + lo;
+        if (verbose)
+            showCalibrationData();
+    }
 
-        if (value > 32767) {
-            value -= 65536;
-        }
+    /**
+     * @return the calibration read from the sensor.
+     */
+    public BMP280Calibration getCalibration() {
+        return calibration;
+    }
 
-        return value;
+    private void showCalibrationData() {
+        // Displays the calibration values for debugging purposes
+        showCalibrationValue("T1", calibration.getT1());
+        showCalibrationValue("T2", calibration.getT2());
+        showCalibrationValue("T3", calibration.getT3());
+        showCalibrationValue("P1", calibration.getP1());
+        showCalibrationValue("P2", calibration.getP2());
+        showCalibrationValue("P3", calibration.getP3());
+        showCalibrationValue("P4", calibration.getP4());
+        showCalibrationValue("P5", calibration.getP5());
+        showCalibrationValue("P6", calibration.getP6());
+        showCalibrationValue("P7", calibration.getP7());
+        showCalibrationValue("P8", calibration.getP8());
+        showCalibrationValue("P9", calibration.getP9());
     }
 
-    public void readCalibrationData() throws Exception {
-        // Reads the calibration data from the IC
-        cal_t1 = readU16(BMP280_DIG_T1);
-        cal_t2 = readS16(BMP280_DIG_T2); //-
-        cal_t3 = readS16(BMP280_DIG_T3);
-
-        cal_p1 = readU16(BMP280_DIG_P1);
-        cal_p2 = readS16(BMP280_DIG_P2);
-        cal_p3 = readS16(BMP280_DIG_P3);
-        cal_p4 = readS16(BMP280_DIG_P4);
-        cal_p5 = readS16(BMP280_DIG_P5);
-        cal_p6 = readS16(BMP280_DIG_P6);
-        cal_p7 = readS16(BMP280_DIG_P7);
-        cal_p8 = readS16(BMP280_DIG_P8);
-        cal_p9 = readS16(BMP280_DIG_P9);
+    private static void showCalibrationValue(String name, int value) {
+        System.out.println("DBG: " + name + " = " + value + " - hex = 0x" + Integer.toHexString(value));
+    }
 
+    /**
+     * Sets the operating profile. The control and config registers are written once here;
+     * in normal mode the following reads fetch the latest result without any register write.
+     *
+     * @param profile the profile, e.g. {@link BMP280Profile#WEATHER_MONITORING}
+     * @throws Exception if sensor communication fails.
+     */
+    public void setProfile(final BMP280Profile profile) throws Exception {
+        gate.acquire();
+        try {
+            bmp280.transaction(device -> {
+                // The config register is only guaranteed to be taken over in sleep mode
+                device.write(BMP280_CONTROL, (byte) profile.controlRegister(BMP280_SLEEP_MODE));
+                device.write(BMP280_CONFIG, (byte) profile.configRegister());
+                if (!profile.isForcedMode())
+                    device.write(BMP280_CONTROL, (byte) profile.controlRegister(BMP280_NORMAL_MODE));
+                return null;
+            });
+            if (!profile.isForcedMode())
+                firstResultNanos = bus.getSleeper().nanoTime() + TimeUnit.MICROSECONDS.toNanos(profile.getMeasurementTimeMicros());
+            this.profile = profile;
+        } finally {
+            gate.release();
+        }
         if (verbose)
-            showCalibrationData();
+            System.out.println("DBG: Profile measurement time " + profile.getMeasurementTimeMicros() + " us");
     }
 
-    private void showCalibrationData() {
-        // Displays the calibration values for debugging purposes
-        System.out.println("DBG: T1 = " + cal_t1 + " - hex = 0x" + Integer.toHexString(cal_t1));
-        System.out.println("DBG: T2 = " + cal_t2 + " - hex = 0x" + Integer.toHexString(cal_t2));
-        System.out.println("DBG: T3 = " + cal_t3 + " - hex = 0x" + Integer.toHexString(cal_t3));
-        System.out.println("DBG: P1 = " + cal_p1 + " - hex = 0x" + Integer.toHexString(cal_p1));
-        System.out.println("DBG: P2 = " + cal_p2 + " - hex = 0x" + Integer.toHexString(cal_p2));
-        System.out.println("DBG: P3 = " + cal_p3 + " - hex = 0x" + Integer.toHexString(cal_p3));
-        System.out.println("DBG: P4 = " + cal_p4 + " - hex = 0x" + Integer.toHexString(cal_p4));
-        System.out.println("DBG: P5 = " + cal_p5 + " - hex = 0x" + Integer.toHexString(cal_p5));
-        System.out.println("DBG: P6 = " + cal_p6 + " - hex = 0x" + Integer.toHexString(cal_p6));
-        System.out.println("DBG: P7 = " + cal_p7 + " - hex = 0x" + Integer.toHexString(cal_p7));
-        System.out.println("DBG: P8 = " + cal_p8 + " - hex = 0x" + Integer.toHexString(cal_p8));
-        System.out.println("DBG: P9 = " + cal_p9 + " - hex = 0x" + Integer.toHexString(cal_p9));
+    public BMP280Profile getProfile() {
+        return profile;
     }
 
     /**
@@ -212,19 +234,9 @@ public class AdafruitBMP280 {
      * @throws Exception
      */
     public int readRawTemperature() throws Exception {
-
-        int tmp1 = (BMP280_NORMAL_MODE + (BMP280_SAMPLE_4 << 2) + (BMP280_SAMPLE_1 << 5));
-        if (verbose)
-            System.out.println("DBG: Raw Temp: " + Integer.toHexString(tmp1 & 0xFFFF) + ", " + tmp1);
-
-
-        bmp280.write(BMP280_CONTROL, (byte) (BMP280_NORMAL_MODE + (BMP280_SAMPLE_4 << 2) + (BMP280_SAMPLE_1 << 5)));
-        waitfor(5);  // Wait 5ms
-        int msb = readU8(BMP280_TEMP_MSB);
-        int lsb = readU8(BMP280_TEMP_LSB);
-        int xlsb = readU8(BMP280_TEMP_XLSB);
-
-        int raw = ((msb << 16) + (lsb << 8) + xlsb) >> (4);
+        MeasurementRead read = new MeasurementRead(false);
+        PhasedReads.run(read);
+        int raw = read.rawTemperature;
 
         if (verbose)
             System.out.println("DBG: Raw Temp: " + (raw & 0xFFFF) + ", " + raw);
@@ -247,17 +259,7 @@ public class AdafruitBMP280 {
      * @return
      */
     public double compensateTemperature(int rawTemperature) {
-        int var1 = (((rawTemperature >> 3) - (cal_t1 << 1)) * cal_t2) >> 11;
-        if (verbose)
-            System.out.println("DBG: var1 = " + var1);
-        int var2 = (((rawTemperature >> 4) - cal_t1) * ((rawTemperature >> 4) - cal_t1) >> 12) * cal_t3 >> 14;
-        if (verbose)
-            System.out.println("DBG: var2 = " + var2);
-        int t_fine = var1 + var2;
-        if (verbose)
-            System.out.println("DBG: t_fine = " + t_fine);
-        return (((t_fine * 5 + 128) >> 8) / 100.0);
-
+        return calibration.compensateTemperature(rawTemperature);
     }
 
 
@@ -268,17 +270,20 @@ public class AdafruitBMP280 {
      * @throws Exception
      */
     public int readRawPressure() throws Exception {
-        double var1, var2;
-
-        //      bmp280.write(BMP280_CONTROL, (byte) (mode + (osrsP << 2) + (osrsT << 5)));
-        bmp280.write(BMP280_CONTROL, (byte) (BMP280_NORMAL_MODE + (BMP280_SAMPLE_4 << 2) + (BMP280_SAMPLE_1 << 5)));
-        waitfor(5);
-        int msb = bmp280.read(BMP280_PRESSURE_MSB);
-        int lsb = bmp280.read(BMP280_PRESSURE_LSB);
-        int xlsb = bmp280.read(BMP280_PRESSURE_XLSB);
+        MeasurementRead read = new MeasurementRead(true);
+        PhasedReads.run(read);
+        return read.rawPressure;
+    }
 
-        int raw = ((msb << 16) + (lsb << 8) + xlsb) >> (4);
-        return raw;
+    /**
+     * Configures how the driver waits for a conversion in forced mode: the status register
+     * is polled every {@code pollIntervalMicros} until the measuring bit is cleared.
+     *
+     * @param pollIntervalMicros time between two status reads in microseconds
+     * @param timeoutMillis      time after which the conversion is considered failed
+     */
+    public void setConversionPolling(long pollIntervalMicros, long timeoutMillis) {
+        conversionPoller.configure(pollIntervalMicros, timeoutMillis);
     }
 
     /**
@@ -294,31 +299,95 @@ public class AdafruitBMP280 {
     /**
      * Reads the pressure from the sensor.
      *
-     * @return the pressure in hPa.
+     * @return the pressure in Pa.
      * @throws Exception if sensor communication fails.
      */
     public double readPressure() throws Exception {
+        return readTemperatureAndPressure().getPressure();
+    }
 
-//        //      bmp280.write(BMP280_CONTROL, (byte) (mode + (osrsP << 2) + (osrsT << 5)));
-//        bmp280.write(BMP280_CONTROL, (byte) (BMP280_NORMAL_MODE + (BMP280_SAMPLE_4 << 2) + (BMP280_SAMPLE_1 << 5)));
-//        waitfor(5);
-//        int msb = bmp280.read(BMP280_PRESSURE_MSB);
-//        int lsb = bmp280.read(BMP280_PRESSURE_LSB);
-//        int xlsb = bmp280.read(BMP280_PRESSURE_XLSB);
-//
-//        int raw = ((msb << 16) + (lsb << 8) + xlsb) >> (4);
+    /**
+     * Reads temperature and pressure with a single burst read of the data registers.
+     * Both values belong to the same measurement and t_fine is computed only once.
+     *
+     * @return the compensated temperature and pressure.
+     * @throws Exception if sensor communication fails.
+     */
+    public Measurement readTemperatureAndPressure() throws Exception {
+        MeasurementRead read = new MeasurementRead(true);
+        PhasedReads.run(read);
 
-        int rawPressure = readRawPressure();
-        long rawTemperature = readRawTemperature();
+        if (verbose)
+            System.out.println("DBG: raw pressure " + read.rawPressure + ", raw temperature " + read.rawTemperature);
 
+        return new Measurement(read.temperature, read.pressure, read.rawTemperature, read.rawPressure);
+    }
 
-        if (verbose)
-            System.out.println("DBG: raw pressure " + rawPressure);
+    /**
+     * Reads the temperature without blocking the caller.
+     *
+     * @return future completed with the temperature in Celsius
+     * @see PhasedReads#runAsync(PhasedRead)
+     */
+    public CompletableFuture<Double> readTemperatureAsync() {
+        return PhasedReads.runAsync(new MeasurementRead(false))
+                .thenApply(read -> compensateTemperature(read.rawTemperature));
+    }
 
-        if (verbose)
-            System.out.println("DBG: raw temperature " + rawTemperature);
+    /**
+     * Reads the pressure without blocking the caller.
+     *
+     * @return future completed with the pressure in Pa
+     */
+    public CompletableFuture<Double> readPressureAsync() {
+        return PhasedReads.runAsync(new MeasurementRead(true)).thenApply(read -> read.pressure);
+    }
 
-        return compensatePressure(rawPressure, rawTemperature);
+    /**
+     * Reads temperature and pressure of the same measurement without blocking the caller.
+     *
+     * @return future completed with the compensated temperature and pressure
+     */
+    public CompletableFuture<Measurement> readTemperatureAndPressureAsync() {
+        return PhasedReads.runAsync(new MeasurementRead(true))
+                .thenApply(read -> new Measurement(read.temperature, read.pressure, read.rawTemperature, read.rawPressure));
+    }
+
+    /**
+     * Returns a phased read of the pressure for the
+     * {@link de.patricksteinert.rpisensorlib.scheduler.SensorScheduler}. In forced mode the
+     * trigger phase starts a measurement, in normal mode it does not access the device.
+     *
+     * @return a new phased read delivering the pressure in Pa
+     */
+    public PhasedRead pressureRead() {
+        return new MeasurementRead(true);
+    }
+
+    /**
+     * @return a new phased read delivering the temperature in Celsius
+     * @see #pressureRead()
+     */
+    public PhasedRead temperatureRead() {
+        return new MeasurementRead(false);
+    }
+
+    /**
+     * Reads the pressure and temperature data registers (0xF7..0xFC) in one I2C transaction
+     * into the reusable data buffer.
+     */
+    private void readDataBlock() throws IOException {
+        int read = bmp280.read(BMP280_PRESSURE_MSB, dataBuffer, 0, BMP280_DATA_LENGTH);
+        if (read != BMP280_DATA_LENGTH)
+            throw new IOException("Short read of BMP280 data registers: " + read + " of " + BMP280_DATA_LENGTH + " bytes");
+    }
+
+    private int rawPressureFromBuffer() {
+        return (((dataBuffer[0] & 0xFF) << 16) + ((dataBuffer[1] & 0xFF) << 8) + (dataBuffer[2] & 0xFF)) >> 4;
+    }
+
+    private int rawTemperatureFromBuffer() {
+        return (((dataBuffer[3] & 0xFF) << 16) + ((dataBuffer[4] & 0xFF) << 8) + (dataBuffer[5] & 0xFF)) >> 4;
     }
 
     /**
@@ -327,29 +396,12 @@ public class AdafruitBMP280 {
      * @return compensated pressure in Pascal
      */
     public double compensatePressure(double rawPressure, long rawTemperature) {
-        double var1, var2;
-        double tvar1 = (((rawTemperature >> 3) - (cal_t1 << 1)) * cal_t2) >> 11;
-        double tvar2 = (((rawTemperature >> 4) - cal_t1) * ((rawTemperature >> 4) - cal_t1) >> 12) * cal_t3 >> 14;
-
-
-        double t_fine = tvar1 + tvar2;
+        double t_fine = calibration.computeTFine(rawTemperature);
 
         if (verbose)
             System.out.println("DBG: t_fine " + t_fine);
 
-        var1 = (t_fine / 2.0) - 64000.0;
-        var2 = var1 * var1 * ((double) cal_p6) / 32768.0;
-
-        var2 = var2 + var1 * ((double) cal_p5) * 2.0;
-        var2 = (var2 / 4.0) + (((double) cal_p4) * 65536.0);
-        var1 = (((double) cal_p3) * var1 * var1 / 524288.0 + ((double) cal_p2) * var1) / 524288.0;
-        var1 = (1.0 + var1 / 32768.0) * ((double) cal_p1);
-        double p = 1048576.0 - rawPressure;
-        p = (p - (var2 / 4096.0)) * 6250.0 / var1;
-        var1 = ((double) cal_p9) * p * p / 2147483648.0;
-        var2 = p * ((double) cal_p8) / 32768.0;
-
-        return (p + (var1 + var2 + ((double) cal_p7)) / 16.0);
+        return calibration.compensatePressure(rawPressure, t_fine);
     }
 
     public String readChipId() throws Exception {
@@ -382,9 +434,121 @@ public class AdafruitBMP280 {
         this.standardSeaLevelPressure = standardSeaLevelPressure;
     }
 
+    /**
+     * One measurement: in forced mode triggers the conversion and polls the status register,
+     * then fetches both values with one burst read.
+     */
+    private final class MeasurementRead implements PhasedRead {
+        private final boolean pressureValue;
+        private BMP280Profile readProfile;
+        private long startNanos;
+        private int rawPressure;
+        private int rawTemperature;
+        private double pressure;
+        private double temperature;
+
+        MeasurementRead(boolean pressureValue) {
+            this.pressureValue = pressureValue;
+        }
+
+        @Override
+        public long trigger() throws IOException {
+            readProfile = profile;
+            startNanos = bus.getSleeper().nanoTime();
+            if (readProfile.isForcedMode()) {
+                bmp280.write(BMP280_CONTROL, (byte) readProfile.controlRegister(BMP280_FORCED_MODE));
+                return TimeUnit.MICROSECONDS.toNanos(readProfile.getTypicalMeasurementTimeMicros());
+            }
+            return Math.max(0, firstResultNanos - startNanos);
+        }
+
+        @Override
+        public long collect() throws IOException {
+            if (readProfile.isForcedMode() && (bmp280.read(BMP280_STATUS) & BMP280_STATUS_MEASURING) != 0)
+                return conversionPoller.nextPoll(bus.getSleeper().nanoTime() - startNanos, BMP280_STATUS);
+
+            readDataBlock();
+            rawPressure = rawPressureFromBuffer();
+            rawTemperature = rawTemperatureFromBuffer();
+            long tFine = calibration.computeTFine(rawTemperature);
+            temperature = BMP280Calibration.temperatureFromTFine(tFine);
+            pressure = calibration.compensatePressure(rawPressure, (double) tFine);
+            return COMPLETE;
+        }
+
+        @Override
+        public double getValue() {
+            return pressureValue ? pressure : temperature;
+        }
+
+        @Override
+        public DeviceGate getGate() {
+            return gate;
+        }
+
+        @Override
+        public String getBusId() {
+            return bus.getId();
+        }
+
+        @Override
+        public Sleeper getSleeper() {
+            return bus.getSleeper();
+        }
+    }
+
+    /**
+     * Temperature and pressure taken from the same measurement.
+     */
+    public static class Measurement {
+        private final double temperature;
+        private final double pressure;
+        private final int rawTemperature;
+        private final int rawPressure;
+
+        public Measurement(double temperature, double pressure) {
+            this(temperature, pressure, 0, 0);
+        }
+
+        public Measurement(double temperature, double pressure, int rawTemperature, int rawPressure) {
+            this.temperature = temperature;
+            this.pressure = pressure;
+            this.rawTemperature = rawTemperature;
+            this.rawPressure = rawPressure;
+        }
+
+        /**
+         * @return temperature in Celsius
+         */
+        public double getTemperature() {
+            return temperature;
+        }
+
+        /**
+         * @return pressure in Pa
+         */
+        public double getPressure() {
+            return pressure;
+        }
+
+        /**
+         * @return the raw temperature the temperature was compensated from
+         */
+        public int getRawTemperature() {
+            return rawTemperature;
+        }
+
+        /**
+         * @return the raw pressure the pressure was compensated from
+         */
+        public int getRawPressure() {
+            return rawPressure;
+        }
+    }
+
     protected static void waitfor(long howMuch) {
         try {
-            Thread.sleep(howMuch);
+            Sleeper.SYSTEM.sleepNanos(TimeUnit.MILLISECONDS.toNanos(howMuch));
         } catch (InterruptedException ie) {
             ie.printStackTrace();
         }
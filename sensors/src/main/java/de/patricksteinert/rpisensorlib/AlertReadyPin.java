@@ -0,0 +1,23 @@
+package de.patricksteinert.rpisensorlib;
+
+/**
+ * The ALERT/RDY pin of an ADS1015 in conversion ready mode. The pin is open drain and falls at
+ * the end of every conversion; the edges are counted, so a waiting reader knows how many
+ * conversions completed since it last looked.
+ */
+public interface AlertReadyPin {
+
+    /**
+     * @return number of falling edges seen so far
+     */
+    long getEdgeCount();
+
+    /**
+     * Waits for a falling edge after the given count.
+     *
+     * @param edgeCount    the edge count seen last
+     * @param timeoutNanos how long to wait at most
+     * @return the edge count, equal to edgeCount if no edge came before the timeout
+     */
+    long awaitEdge(long edgeCount, long timeoutNanos) throws InterruptedException;
+}
@@ -0,0 +1,184 @@
+package de.patricksteinert.rpisensorlib;
+
+/**
+ * Immutable set of BMP180 calibration coefficients (AC1..MD) together with the
+ * derived constants used by the compensation formulas of the datasheet.
+ */
+public final class BMP180Calibration {
+
+    /**
+     * First register of the calibration block.
+     */
+    public static final int REGISTER_START = 0xAA;
+
+    /**
+     * Length of the calibration block (0xAA..0xBF) in bytes.
+     */
+    public static final int LENGTH = 22;
+
+    /**
+     * Calibration example from the datasheet, useful to test the conversion results
+     * (UT = 27898 and UP = 23843 in ultra low power mode, 15.0 C and 69964 Pa in the datasheet).
+     */
+    public static final BMP180Calibration DATASHEET_EXAMPLE =
+            new BMP180Calibration(408, -72, -14383, 32741, 32757, 23153, 6190, 4, -32768, -8711, 2868);
+
+    private final int ac1;
+    private final int ac2;
+    private final int ac3;
+    private final int ac4;
+    private final int ac5;
+    private final int ac6;
+    private final int b1;
+    private final int b2;
+    private final int mb;
+    private final int mc;
+    private final int md;
+
+    // Derived constants
+    private final int ac1x4;  // AC1 * 4
+    private final int mc11;   // MC << 11
+
+    public BMP180Calibration(int ac1, int ac2, int ac3, int ac4, int ac5, int ac6,
+                             int b1, int b2, int mb, int mc, int md) {
+        this.ac1 = ac1;
+        this.ac2 = ac2;
+        this.ac3 = ac3;
+        this.ac4 = ac4;
+        this.ac5 = ac5;
+        this.ac6 = ac6;
+        this.b1 = b1;
+        this.b2 = b2;
+        this.mb = mb;
+        this.mc = mc;
+        this.md = md;
+
+        this.ac1x4 = ac1 * 4;
+        this.mc11 = mc << 11;
+    }
+
+    /**
+     * Decodes the calibration block as read from registers 0xAA..0xBF.
+     *
+     * @param block  raw register content
+     * @param offset offset of register 0xAA in the block
+     * @return the calibration
+     */
+    public static BMP180Calibration fromRegisters(byte[] block, int offset) {
+        if (block.length - offset < LENGTH)
+            throw new IllegalArgumentException("BMP180 calibration block needs " + LENGTH + " bytes");
+        return new BMP180Calibration(
+                s16(block, offset), s16(block, offset + 2), s16(block, offset + 4),
+                u16(block, offset + 6), u16(block, offset + 8), u16(block, offset + 10),
+                s16(block, offset + 12), s16(block, offset + 14), s16(block, offset + 16),
+                s16(block, offset + 18), s16(block, offset + 20));
+    }
+
+    private static int u16(byte[] b, int i) {
+        // big endian
+        return ((b[i] & 0xFF) << 8) | (b[i + 1] & 0xFF);
+    }
+
+    private static int s16(byte[] b, int i) {
+        return (short) u16(b, i);
+    }
+
+    /**
+     * Computes B5 from the raw temperature; B5 is shared by the temperature and
+     * pressure compensation.
+     *
+     * @param rawTemperature raw (uncompensated) temperature UT
+     * @return B5
+     */
+    public int computeB5(int rawTemperature) {
+        int x1 = ((rawTemperature - ac6) * ac5) >> 15;
+        int x2 = mc11 / (x1 + md);
+        return x1 + x2;
+    }
+
+    /**
+     * @param b5 B5, see {@link #computeB5(int)}
+     * @return temperature in Celsius
+     */
+    public static float temperatureFromB5(int b5) {
+        return ((b5 + 8) >> 4) / 10.0f;
+    }
+
+    /**
+     * Compensates the raw pressure.
+     *
+     * @param rawPressure raw (uncompensated) pressure UP
+     * @param b5          B5, see {@link #computeB5(int)}
+     * @param mode        oversampling setting the raw pressure was measured with
+     * @return pressure in Pa
+     */
+    public int compensatePressure(int rawPressure, int b5, int mode) {
+        int b6 = b5 - 4000;
+        int b6sq = (b6 * b6) >> 12;
+        int x1 = (b2 * (b6 * b6) >> 12) >> 11;
+        int x2 = (ac2 * b6) >> 11;
+        int x3 = x1 + x2;
+        int b3 = (((ac1x4 + x3) << mode) + 2) / 4;
+
+        x1 = (ac3 * b6) >> 13;
+        x2 = (b1 * b6sq) >> 16;
+        x3 = ((x1 + x2) + 2) >> 2;
+        int b4 = (ac4 * (x3 + 32768)) >> 15;
+        int b7 = (rawPressure - b3) * (50000 >> mode);
+
+        int p;
+        if (b7 < 0x80000000)
+            p = (b7 * 2) / b4;
+        else
+            p = (b7 / b4) * 2;
+
+        x1 = (p >> 8) * (p >> 8);
+        x1 = (x1 * 3038) >> 16;
+        x2 = (-7357 * p) >> 16;
+        return p + ((x1 + x2 + 3791) >> 4);
+    }
+
+    public int getAC1() {
+        return ac1;
+    }
+
+    public int getAC2() {
+        return ac2;
+    }
+
+    public int getAC3() {
+        return ac3;
+    }
+
+    public int getAC4() {
+        return ac4;
+    }
+
+    public int getAC5() {
+        return ac5;
+    }
+
+    public int getAC6() {
+        return ac6;
+    }
+
+    public int getB1() {
+        return b1;
+    }
+
+    public int getB2() {
+        return b2;
+    }
+
+    public int getMB() {
+        return mb;
+    }
+
+    public int getMC() {
+        return mc;
+    }
+
+    public int getMD() {
+        return md;
+    }
+}
@@ -0,0 +1,327 @@
+package de.patricksteinert.rpisensorlib;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Immutable set of BMP280 calibration coefficients (dig_T1..dig_P9) together with the
+ * derived constants used by the compensation formulas of the datasheet.
+ * <p>
+ * The constants are computed once when the calibration is created, so every
+ * compensation call only does the arithmetic that depends on the sample.
+ * Scaling by powers of two is exact in floating point, so the results are identical
+ * to evaluating the datasheet formulas directly.
+ * <p>
+ * Besides the floating point formulas the class implements the integer variant of the
+ * datasheet (32 bit temperature, 64 bit pressure), including bulk methods that compensate
+ * arrays of logged raw values without allocating.
+ */
+public final class BMP280Calibration {
+
+    /**
+     * First register of the calibration block.
+     */
+    public static final int REGISTER_START = 0x88;
+
+    /**
+     * Length of the calibration block (0x88..0x9F) in bytes.
+     */
+    public static final int LENGTH = 24;
+
+    private final int t1;
+    private final int t2;
+    private final int t3;
+    private final int p1;
+    private final int p2;
+    private final int p3;
+    private final int p4;
+    private final int p5;
+    private final int p6;
+    private final int p7;
+    private final int p8;
+    private final int p9;
+
+    // Derived constants
+    private final int t1x2;          // dig_T1 << 1
+    private final double p1d;        // dig_P1
+    private final double p2d;        // dig_P2
+    private final double p3Scaled;   // dig_P3 / 2^19
+    private final double p4Scaled;   // dig_P4 * 2^16
+    private final double p5x2;       // dig_P5 * 2
+    private final double p6Scaled;   // dig_P6 / 2^15
+    private final double p7d;        // dig_P7
+    private final double p8Scaled;   // dig_P8 / 2^15
+    private final double p9Scaled;   // dig_P9 / 2^31
+    private final long p4Shifted;    // dig_P4 << 35
+    private final long p7Shifted;    // dig_P7 << 4
+
+    /**
+     * Minimum number of samples one task compensates in {@link #compensateParallel}.
+     */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
+    public BMP280Calibration(int t1, int t2, int t3,
+                             int p1, int p2, int p3, int p4, int p5, int p6, int p7, int p8, int p9) {
+        this.t1 = t1;
+        this.t2 = t2;
+        this.t3 = t3;
+        this.p1 = p1;
+        this.p2 = p2;
+        this.p3 = p3;
+        this.p4 = p4;
+        this.p5 = p5;
+        this.p6 = p6;
+        this.p7 = p7;
+        this.p8 = p8;
+        this.p9 = p9;
+
+        this.t1x2 = t1 << 1;
+        this.p1d = p1;
+        this.p2d = p2;
+        this.p3Scaled = p3 / 524288.0;
+        this.p4Scaled = p4 * 65536.0;
+        this.p5x2 = p5 * 2.0;
+        this.p6Scaled = p6 / 32768.0;
+        this.p7d = p7;
+        this.p8Scaled = p8 / 32768.0;
+        this.p9Scaled = p9 / 2147483648.0;
+        this.p4Shifted = ((long) p4) << 35;
+        this.p7Shifted = ((long) p7) << 4;
+    }
+
+    /**
+     * Decodes the calibration block as read from registers 0x88..0x9F.
+     *
+     * @param block  raw register content
+     * @param offset offset of register 0x88 in the block
+     * @return the calibration
+     */
+    public static BMP280Calibration fromRegisters(byte[] block, int offset) {
+        if (block.length - offset < LENGTH)
+            throw new IllegalArgumentException("BMP280 calibration block needs " + LENGTH + " bytes");
+        return new BMP280Calibration(
+                u16(block, offset), s16(block, offset + 2), s16(block, offset + 4),
+                u16(block, offset + 6), s16(block, offset + 8), s16(block, offset + 10),
+                s16(block, offset + 12), s16(block, offset + 14), s16(block, offset + 16),
+                s16(block, offset + 18), s16(block, offset + 20), s16(block, offset + 22));
+    }
+
+    private static int u16(byte[] b, int i) {
+        // little endian
+        return ((b[i + 1] & 0xFF) << 8) | (b[i] & 0xFF);
+    }
+
+    private static int s16(byte[] b, int i) {
+        return (short) u16(b, i);
+    }
+
+    /**
+     * Computes the fine resolution temperature t_fine shared by the temperature and
+     * pressure compensation.
+     *
+     * @param rawTemperature raw (uncompensated) temperature
+     * @return t_fine
+     */
+    public long computeTFine(long rawTemperature) {
+        long tvar1 = (((rawTemperature >> 3) - t1x2) * t2) >> 11;
+        long tvar2 = (((rawTemperature >> 4) - t1) * ((rawTemperature >> 4) - t1) >> 12) * t3 >> 14;
+        return tvar1 + tvar2;
+    }
+
+    /**
+     * @param tFine fine resolution temperature
+     * @return temperature in Celsius
+     */
+    public static double temperatureFromTFine(long tFine) {
+        return ((tFine * 5 + 128) >> 8) / 100.0;
+    }
+
+    /**
+     * Compensates the raw temperature with 32 bit integer arithmetic.
+     *
+     * @param rawTemperature raw (uncompensated) temperature
+     * @return temperature in Celsius
+     */
+    public double compensateTemperature(int rawTemperature) {
+        return temperatureCentiCelsius(computeTFineInt(rawTemperature)) / 100.0;
+    }
+
+    /**
+     * Compensates the raw pressure with the floating point formula of the datasheet.
+     *
+     * @param rawPressure raw (uncompensated) pressure
+     * @param tFine       fine resolution temperature, see {@link #computeTFine(long)}
+     * @return pressure in Pa
+     */
+    public double compensatePressure(double rawPressure, double tFine) {
+        double var1, var2;
+        var1 = (tFine / 2.0) - 64000.0;
+        var2 = var1 * var1 * p6Scaled;
+        var2 = var2 + var1 * p5x2;
+        var2 = (var2 / 4.0) + p4Scaled;
+        var1 = (p3Scaled * var1 * var1 + p2d * var1) / 524288.0;
+        var1 = (1.0 + var1 / 32768.0) * p1d;
+        double p = 1048576.0 - rawPressure;
+        p = (p - (var2 / 4096.0)) * 6250.0 / var1;
+        var1 = p9Scaled * p * p;
+        var2 = p * p8Scaled;
+        return (p + (var1 + var2 + p7d) / 16.0);
+    }
+
+    /**
+     * Computes t_fine with the 32 bit integer formula of the datasheet.
+     *
+     * @param rawTemperature raw (uncompensated) temperature
+     * @return t_fine
+     */
+    public int computeTFineInt(int rawTemperature) {
+        int var1 = (((rawTemperature >> 3) - t1x2) * t2) >> 11;
+        int var2 = (((rawTemperature >> 4) - t1) * ((rawTemperature >> 4) - t1) >> 12) * t3 >> 14;
+        return var1 + var2;
+    }
+
+    /**
+     * @param tFine fine resolution temperature, see {@link #computeTFineInt(int)}
+     * @return temperature in 1/100 Celsius
+     */
+    public static int temperatureCentiCelsius(int tFine) {
+        return (tFine * 5 + 128) >> 8;
+    }
+
+    /**
+     * Compensates the raw pressure with the 64 bit integer formula of the datasheet.
+     *
+     * @param rawPressure raw (uncompensated) pressure
+     * @param tFine       fine resolution temperature, see {@link #computeTFineInt(int)}
+     * @return pressure in Pa as unsigned Q24.8 fixed point value (divide by 256 for Pa)
+     */
+    public long compensatePressureQ24_8(int rawPressure, int tFine) {
+        long var1 = ((long) tFine) - 128000;
+        long var2 = var1 * var1 * p6;
+        var2 = var2 + ((var1 * p5) << 17);
+        var2 = var2 + p4Shifted;
+        var1 = ((var1 * var1 * p3) >> 8) + ((var1 * p2) << 12);
+        var1 = (((1L << 47) + var1) * p1) >> 33;
+        if (var1 == 0)
+            return 0; // avoid exception caused by division by zero
+        long p = 1048576 - rawPressure;
+        p = (((p << 31) - var2) * 3125) / var1;
+        var1 = (((long) p9) * (p >> 13) * (p >> 13)) >> 25;
+        var2 = (((long) p8) * p) >> 19;
+        return (((p + var1 + var2) >> 8) + p7Shifted) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Compensates logged raw values with the integer formulas. Only the range
+     * {@code [from, to)} is processed, so large arrays can be split across threads.
+     * No objects are allocated.
+     *
+     * @param rawP      raw pressure values
+     * @param rawT      raw temperature values
+     * @param outPa     receives the pressure in Pa
+     * @param outCentiC receives the temperature in 1/100 Celsius
+     * @param from      first index (inclusive)
+     * @param to        last index (exclusive)
+     */
+    public void compensate(int[] rawP, int[] rawT, int[] outPa, int[] outCentiC, int from, int to) {
+        if (from < 0 || to > rawP.length || to > rawT.length || to > outPa.length || to > outCentiC.length || from > to)
+            throw new ArrayIndexOutOfBoundsException("Invalid range [" + from + ", " + to + ")");
+        for (int i = from; i < to; i++) {
+            int tFine = computeTFineInt(rawT[i]);
+            outCentiC[i] = temperatureCentiCelsius(tFine);
+            outPa[i] = (int) (compensatePressureQ24_8(rawP[i], tFine) >> 8);
+        }
+    }
+
+    /**
+     * Same as {@link #compensate(int[], int[], int[], int[], int, int)}, but splits large
+     * ranges into chunks processed by the common fork join pool.
+     */
+    public void compensateParallel(final int[] rawP, final int[] rawT, final int[] outPa, final int[] outCentiC,
+                                   int from, int to) {
+        if (to - from <= PARALLEL_THRESHOLD) {
+            compensate(rawP, rawT, outPa, outCentiC, from, to);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new CompensateTask(rawP, rawT, outPa, outCentiC, from, to));
+    }
+
+    private final class CompensateTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] rawP;
+        private final int[] rawT;
+        private final int[] outPa;
+        private final int[] outCentiC;
+        private final int from;
+        private final int to;
+
+        CompensateTask(int[] rawP, int[] rawT, int[] outPa, int[] outCentiC, int from, int to) {
+            this.rawP = rawP;
+            this.rawT = rawT;
+            this.outPa = outPa;
+            this.outCentiC = outCentiC;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                compensate(rawP, rawT, outPa, outCentiC, from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CompensateTask(rawP, rawT, outPa, outCentiC, from, middle),
+                        new CompensateTask(rawP, rawT, outPa, outCentiC, middle, to));
+            }
+        }
+    }
+
+    public int getT1() {
+        return t1;
+    }
+
+    public int getT2() {
+        return t2;
+    }
+
+    public int getT3() {
+        return t3;
+    }
+
+    public int getP1() {
+        return p1;
+    }
+
+    public int getP2() {
+        return p2;
+    }
+
+    public int getP3() {
+        return p3;
+    }
+
+    public int getP4() {
+        return p4;
+    }
+
+    public int getP5() {
+        return p5;
+    }
+
+    public int getP6() {
+        return p6;
+    }
+
+    public int getP7() {
+        return p7;
+    }
+
+    public int getP8() {
+        return p8;
+    }
+
+    public int getP9() {
+        return p9;
+    }
+}
@@ -0,0 +1,241 @@
+package de.patricksteinert.rpisensorlib;
+
+/**
+ * Operating profile of a BMP280: oversampling, IIR filter, standby time and power mode.
+ * <p>
+ * Use one of the presets recommended by the datasheet or build an own profile:
+ * <pre>
+ * BMP280Profile profile = new BMP280Profile.Builder()
+ *         .pressureOversampling(AdafruitBMP280.BMP280_SAMPLE_8)
+ *         .temperatureOversampling(AdafruitBMP280.BMP280_SAMPLE_1)
+ *         .filter(BMP280Profile.FILTER_4)
+ *         .normalMode(BMP280Profile.STANDBY_62_5_MS)
+ *         .build();
+ * </pre>
+ */
+public final class BMP280Profile {
+
+    // IIR filter coefficients (config register bits 4,3,2)
+    public static final int FILTER_OFF = 0;
+    public static final int FILTER_2 = 1;
+    public static final int FILTER_4 = 2;
+    public static final int FILTER_8 = 3;
+    public static final int FILTER_16 = 4;
+
+    // Standby time between two measurements in normal mode (config register bits 7,6,5)
+    public static final int STANDBY_0_5_MS = 0;
+    public static final int STANDBY_62_5_MS = 1;
+    public static final int STANDBY_125_MS = 2;
+    public static final int STANDBY_250_MS = 3;
+    public static final int STANDBY_500_MS = 4;
+    public static final int STANDBY_1000_MS = 5;
+    public static final int STANDBY_2000_MS = 6;
+    public static final int STANDBY_4000_MS = 7;
+
+    private static final int[] STANDBY_MICROS = {500, 62500, 125000, 250000, 500000, 1000000, 2000000, 4000000};
+
+    /**
+     * Normal mode, pressure x4, temperature x1, filter off. The setting the driver always used.
+     */
+    public static final BMP280Profile DEFAULT = new Builder()
+            .pressureOversampling(AdafruitBMP280.BMP280_SAMPLE_4)
+            .temperatureOversampling(AdafruitBMP280.BMP280_SAMPLE_1)
+            .normalMode(STANDBY_0_5_MS)
+            .build();
+
+    /**
+     * Weather monitoring: forced mode, pressure x1, temperature x1, filter off.
+     * Lowest power, one measurement per read.
+     */
+    public static final BMP280Profile WEATHER_MONITORING = new Builder()
+            .pressureOversampling(AdafruitBMP280.BMP280_SAMPLE_1)
+            .temperatureOversampling(AdafruitBMP280.BMP280_SAMPLE_1)
+            .forcedMode()
+            .build();
+
+    /**
+     * Indoor navigation: normal mode, pressure x16, temperature x2, filter 16, standby 0.5 ms.
+     * Lowest noise, about 26 Hz.
+     */
+    public static final BMP280Profile INDOOR_NAVIGATION = new Builder()
+            .pressureOversampling(AdafruitBMP280.BMP280_SAMPLE_16)
+            .temperatureOversampling(AdafruitBMP280.BMP280_SAMPLE_2)
+            .filter(FILTER_16)
+            .normalMode(STANDBY_0_5_MS)
+            .build();
+
+    /**
+     * High rate: normal mode, pressure x1, temperature x1, filter off, standby 0.5 ms.
+     * Highest output data rate, about 150 Hz.
+     */
+    public static final BMP280Profile HIGH_RATE = new Builder()
+            .pressureOversampling(AdafruitBMP280.BMP280_SAMPLE_1)
+            .temperatureOversampling(AdafruitBMP280.BMP280_SAMPLE_1)
+            .normalMode(STANDBY_0_5_MS)
+            .build();
+
+    private final int temperatureOversampling;
+    private final int pressureOversampling;
+    private final int filter;
+    private final int standby;
+    private final boolean forced;
+
+    private BMP280Profile(Builder builder) {
+        this.temperatureOversampling = builder.temperatureOversampling;
+        this.pressureOversampling = builder.pressureOversampling;
+        this.filter = builder.filter;
+        this.standby = builder.standby;
+        this.forced = builder.forced;
+    }
+
+    public int getTemperatureOversampling() {
+        return temperatureOversampling;
+    }
+
+    public int getPressureOversampling() {
+        return pressureOversampling;
+    }
+
+    public int getFilter() {
+        return filter;
+    }
+
+    public int getStandby() {
+        return standby;
+    }
+
+    /**
+     * @return true for forced (one shot) mode, false for normal (continuous) mode
+     */
+    public boolean isForcedMode() {
+        return forced;
+    }
+
+    /**
+     * Maximum measurement time according to the datasheet:
+     * 1.25 ms + 2.3 ms * osrs_t + (2.3 ms * osrs_p + 0.575 ms).
+     *
+     * @return the measurement time in microseconds
+     */
+    public long getMeasurementTimeMicros() {
+        return measurementTimeMicros(1250, 2300, 575);
+    }
+
+    /**
+     * Typical measurement time according to the datasheet:
+     * 1 ms + 2 ms * osrs_t + (2 ms * osrs_p + 0.5 ms).
+     *
+     * @return the measurement time in microseconds
+     */
+    public long getTypicalMeasurementTimeMicros() {
+        return measurementTimeMicros(1000, 2000, 500);
+    }
+
+    private long measurementTimeMicros(int base, int perSample, int pressureOffset) {
+        long time = base;
+        int t = oversamplingFactor(temperatureOversampling);
+        int p = oversamplingFactor(pressureOversampling);
+        time += (long) perSample * t;
+        if (p > 0)
+            time += (long) perSample * p + pressureOffset;
+        return time;
+    }
+
+    /**
+     * Time between two results in normal mode (measurement time plus standby time).
+     * In forced mode this is the measurement time.
+     *
+     * @return the sample period in microseconds
+     */
+    public long getSamplePeriodMicros() {
+        return forced ? getMeasurementTimeMicros() : getMeasurementTimeMicros() + STANDBY_MICROS[standby];
+    }
+
+    /**
+     * @param oversampling one of the BMP280_SAMPLE_* settings
+     * @return the number of samples taken per measurement
+     */
+    public static int oversamplingFactor(int oversampling) {
+        switch (oversampling) {
+            case AdafruitBMP280.BMP280_SAMPLE_0:
+                return 0;
+            case AdafruitBMP280.BMP280_SAMPLE_1:
+                return 1;
+            case AdafruitBMP280.BMP280_SAMPLE_2:
+                return 2;
+            case AdafruitBMP280.BMP280_SAMPLE_4:
+                return 4;
+            case AdafruitBMP280.BMP280_SAMPLE_8:
+                return 8;
+            default:
+                return 16;
+        }
+    }
+
+    /**
+     * @param mode power mode bits
+     * @return value of the control register (0xF4)
+     */
+    int controlRegister(int mode) {
+        return (temperatureOversampling << 5) | (pressureOversampling << 2) | mode;
+    }
+
+    /**
+     * @return value of the config register (0xF5)
+     */
+    int configRegister() {
+        return (standby << 5) | (filter << 2);
+    }
+
+    public static class Builder {
+        private int temperatureOversampling = AdafruitBMP280.BMP280_SAMPLE_1;
+        private int pressureOversampling = AdafruitBMP280.BMP280_SAMPLE_1;
+        private int filter = FILTER_OFF;
+        private int standby = STANDBY_0_5_MS;
+        private boolean forced = false;
+
+        public Builder temperatureOversampling(int oversampling) {
+            this.temperatureOversampling = checkRange("oversampling", oversampling, 7);
+            return this;
+        }
+
+        public Builder pressureOversampling(int oversampling) {
+            this.pressureOversampling = checkRange("oversampling", oversampling, 7);
+            return this;
+        }
+
+        public Builder filter(int filter) {
+            this.filter = checkRange("filter", filter, FILTER_16);
+            return this;
+        }
+
+        /**
+         * Use forced mode: every read triggers one measurement and the sensor sleeps in between.
+         */
+        public Builder forcedMode() {
+            this.forced = true;
+            return this;
+        }
+
+        /**
+         * Use normal mode: the sensor measures continuously and reads return the latest result.
+         *
+         * @param standby one of the STANDBY_* settings
+         */
+        public Builder normalMode(int standby) {
+            this.standby = checkRange("standby", standby, STANDBY_4000_MS);
+            this.forced = false;
+            return this;
+        }
+
+        public BMP280Profile build() {
+            return new BMP280Profile(this);
+        }
+
+        private static int checkRange(String name, int value, int max) {
+            if (value < 0 || value > max)
+                throw new IllegalArgumentException("Invalid " + name + " setting: " + value);
+            return value;
+        }
+    }
+}
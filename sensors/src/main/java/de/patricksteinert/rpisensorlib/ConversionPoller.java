@@ -0,0 +1,44 @@
+package de.patricksteinert.rpisensorlib;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits for a conversion to complete by polling a status bit instead of sleeping
+ * for the worst case conversion time.
+ */
+final class ConversionPoller {
+
+    static final long DEFAULT_POLL_INTERVAL_MICROS = 500;
+    static final long DEFAULT_TIMEOUT_MILLIS = 100;
+
+    private long pollIntervalNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_POLL_INTERVAL_MICROS);
+    private long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_TIMEOUT_MILLIS);
+
+    void configure(long pollIntervalMicros, long timeoutMillis) {
+        if (pollIntervalMicros <= 0 || timeoutMillis <= 0)
+            throw new IllegalArgumentException("Poll interval and timeout must be positive");
+        this.pollIntervalNanos = TimeUnit.MICROSECONDS.toNanos(pollIntervalMicros);
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /**
+     * Called when a poll found the conversion still running.
+     *
+     * @param elapsedNanos time since the conversion was started, on the clock of the bus
+     * @param register     the polled register, for the error message
+     * @return nanoseconds to wait before the next poll
+     * @throws IOException if the conversion exceeded the timeout
+     */
+    long nextPoll(long elapsedNanos, int register) throws IOException {
+        if (elapsedNanos >= timeoutNanos)
+            throw new IOException("Conversion not completed within "
+                    + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms (register 0x"
+                    + Integer.toHexString(register) + ")");
+        return pollIntervalNanos;
+    }
+
+    long getPollIntervalNanos() {
+        return pollIntervalNanos;
+    }
+}
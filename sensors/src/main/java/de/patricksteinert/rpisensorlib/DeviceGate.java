@@ -0,0 +1,85 @@
+package de.patricksteinert.rpisensorlib;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Grants exclusive use of a device for the whole duration of a read, including the time the
+ * device converts. Unlike a lock the gate can be released by another thread than the one
+ * that acquired it, so a read can be triggered and collected by different threads.
+ * <p>
+ * Waiting acquirers, blocking and asynchronous, are served in order.
+ */
+public final class DeviceGate {
+
+    private boolean held;
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<CompletableFuture<Void>>();
+
+    /**
+     * Acquires the gate if it is free.
+     *
+     * @return true if the gate was acquired
+     */
+    public synchronized boolean tryAcquire() {
+        if (held)
+            return false;
+        held = true;
+        return true;
+    }
+
+    /**
+     * Acquires the gate without blocking the caller.
+     *
+     * @return future completed when the gate was acquired; cancel it to give up waiting
+     */
+    public synchronized CompletableFuture<Void> acquireAsync() {
+        if (!held) {
+            held = true;
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<Void>();
+        waiters.add(waiter);
+        return waiter;
+    }
+
+    /**
+     * Waits until the gate is free and acquires it.
+     */
+    public void acquire() throws InterruptedException {
+        CompletableFuture<Void> waiter = acquireAsync();
+        try {
+            waiter.get();
+        } catch (InterruptedException e) {
+            // The gate may have been handed over meanwhile
+            if (!waiter.cancel(false))
+                release();
+            throw e;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Releases the gate, handing it over to the first waiter.
+     */
+    public void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                if (!held)
+                    throw new IllegalStateException("Device gate is not held");
+                next = waiters.poll();
+                if (next == null) {
+                    held = false;
+                    return;
+                }
+            }
+            // Completed outside the monitor, it runs the continuation of the waiter.
+            // A waiter that was cancelled meanwhile is skipped.
+            if (next.complete(null))
+                return;
+        }
+    }
+}
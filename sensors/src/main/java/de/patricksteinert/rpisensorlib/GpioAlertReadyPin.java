@@ -0,0 +1,52 @@
+package de.patricksteinert.rpisensorlib;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioPinDigitalInput;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinPullResistance;
+import com.pi4j.io.gpio.event.GpioPinListenerDigital;
+import com.pi4j.wiringpi.GpioUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ALERT/RDY pin on a GPIO input with pull-up. The edge listener counts the falling edges and
+ * wakes the waiting reader. In continuous mode the pin is pulled low for about 8 µs only, the
+ * edge event is the sole way to see it. The state reported with the event is sampled after the
+ * pulse may already have ended, so edge detection is narrowed to falling edges and every event
+ * is counted.
+ */
+public class GpioAlertReadyPin implements AlertReadyPin {
+
+    private final GpioPinDigitalInput alert;
+    private long edges;
+
+    public GpioAlertReadyPin(GpioController gpio, Pin alertPin) {
+        alert = gpio.provisionDigitalInputPin(alertPin, "ADS1015 ALERT/RDY", PinPullResistance.PULL_UP);
+        // Provisioning exports the pin with detection of both edges
+        GpioUtil.setEdgeDetection(alertPin.getAddress(), GpioUtil.EDGE_FALLING);
+        alert.addListener((GpioPinListenerDigital) event -> {
+            synchronized (this) {
+                edges++;
+                notifyAll();
+            }
+        });
+    }
+
+    @Override
+    public synchronized long getEdgeCount() {
+        return edges;
+    }
+
+    @Override
+    public synchronized long awaitEdge(long edgeCount, long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        while (edges == edgeCount) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                break;
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return edges;
+    }
+}
@@ -0,0 +1,71 @@
+package de.patricksteinert.rpisensorlib;
+
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioPinDigitalMultipurpose;
+import com.pi4j.io.gpio.GpioPinDigitalOutput;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.io.gpio.PinMode;
+import com.pi4j.io.gpio.PinState;
+import com.pi4j.io.gpio.event.GpioPinListenerDigital;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Two-wire interface on two GPIO pins. The end of a measurement is detected with falling edge
+ * events on the data pin; polling backs them up in case an edge is missed or the platform
+ * delivers no events.
+ */
+public class GpioTwoWireInterface implements TwoWireInterface {
+
+    private final GpioPinDigitalOutput sck;
+    private final GpioPinDigitalMultipurpose data;
+    private final Object fallingEdge = new Object();
+
+    public GpioTwoWireInterface(GpioController gpio, Pin clockPin, Pin dataPin) {
+        sck = gpio.provisionDigitalOutputPin(clockPin, "SHT15 SCK", PinState.LOW);
+        data = gpio.provisionDigitalMultipurposePin(dataPin, "SHT DATA", PinMode.DIGITAL_OUTPUT);
+        data.addListener((GpioPinListenerDigital) event -> {
+            if (event.getState() == PinState.LOW) {
+                synchronized (fallingEdge) {
+                    fallingEdge.notifyAll();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void setClock(boolean high) {
+        sck.setState(high);
+    }
+
+    @Override
+    public void setDataOutput(boolean output) {
+        data.setMode(output ? PinMode.DIGITAL_OUTPUT : PinMode.DIGITAL_INPUT);
+    }
+
+    @Override
+    public void setData(boolean high) {
+        data.setState(high);
+    }
+
+    @Override
+    public boolean isDataHigh() {
+        return data.getState() == PinState.HIGH;
+    }
+
+    @Override
+    public boolean awaitDataLow(long timeoutNanos) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutNanos;
+        synchronized (fallingEdge) {
+            // The listener waits for the monitor, so an edge between the check and the wait
+            // is not lost
+            while (isDataHigh()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(fallingEdge, Math.min(remaining, DATA_POLL_NANOS));
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package de.patricksteinert.rpisensorlib;
+
+import java.io.IOException;
+
+/**
+ * A sensor read split into a "trigger conversion" and a "collect result" phase, so the
+ * caller decides how to spend the conversion time instead of blocking in a sleep.
+ * <p>
+ * A phased read is used while holding the {@link DeviceGate} of its device:
+ * <pre>
+ * long delay = read.trigger();
+ * while (delay != PhasedRead.COMPLETE) {
+ *     // wait delay nanoseconds, e.g. sleep or serve other sensors
+ *     delay = read.collect();
+ * }
+ * double value = read.getValue();
+ * </pre>
+ * Instances are reusable but not thread safe; every trigger starts a new read.
+ */
+public interface PhasedRead {
+
+    /**
+     * Returned by {@link #collect()} when the value is available.
+     */
+    long COMPLETE = -1;
+
+    /**
+     * Starts a conversion.
+     *
+     * @return nanoseconds to wait before calling {@link #collect()}
+     * @throws IOException if sensor communication fails
+     */
+    long trigger() throws IOException;
+
+    /**
+     * Collects the result of the conversion, or continues with the next conversion if the
+     * read needs several of them.
+     *
+     * @return {@link #COMPLETE} when {@link #getValue()} holds the result, otherwise the
+     * nanoseconds to wait before calling collect() again
+     * @throws IOException if sensor communication fails or the conversion timed out
+     */
+    long collect() throws IOException;
+
+    /**
+     * @return the value of the last completed read
+     */
+    double getValue();
+
+    /**
+     * @return the gate of the device; it must be held from trigger until the read completes
+     */
+    DeviceGate getGate();
+
+    /**
+     * @return identifies the bus the device is attached to, reads on the same bus share a thread
+     * in the {@link de.patricksteinert.rpisensorlib.scheduler.SensorScheduler}
+     */
+    String getBusId();
+
+    /**
+     * @return the clock a blocking run sleeps with between the phases, the one of the bus
+     */
+    default Sleeper getSleeper() {
+        return Sleeper.SYSTEM;
+    }
+}
@@ -0,0 +1,144 @@
+package de.patricksteinert.rpisensorlib;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs phased reads, either blocking in the calling thread or asynchronously.
+ * <p>
+ * Asynchronous reads wait for the device and its conversions with timer events on a shared
+ * scheduled executor instead of sleeping, so many reads can be in flight at once:
+ * <pre>
+ * CompletableFuture&lt;Double&gt; pressure = bmp280.readPressureAsync();
+ * CompletableFuture&lt;Double&gt; humidity = sht15.readHumidityAsync();
+ * CompletableFuture.allOf(pressure, humidity).join(); // takes as long as the slowest read
+ * </pre>
+ */
+public final class PhasedReads {
+
+    private static final ScheduledExecutorService EXECUTOR = createExecutor();
+
+    private PhasedReads() {
+    }
+
+    private static ScheduledExecutorService createExecutor() {
+        final AtomicInteger count = new AtomicInteger();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "sensor-async-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * @return the executor running the asynchronous reads
+     */
+    public static ScheduledExecutorService getExecutor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Acquires the gate of the read, runs all phases and sleeps in between.
+     *
+     * @param read the read
+     * @return the value
+     * @throws IOException if sensor communication fails
+     */
+    public static double run(PhasedRead read) throws IOException, InterruptedException {
+        DeviceGate gate = read.getGate();
+        gate.acquire();
+        try {
+            runHoldingGate(read);
+            return read.getValue();
+        } finally {
+            gate.release();
+        }
+    }
+
+    /**
+     * Runs all phases of the read; the caller already holds the gate.
+     *
+     * @param read the read
+     * @throws IOException if sensor communication fails
+     */
+    public static void runHoldingGate(PhasedRead read) throws IOException, InterruptedException {
+        Sleeper sleeper = read.getSleeper();
+        long delay = read.trigger();
+        while (delay != PhasedRead.COMPLETE) {
+            if (delay > 0)
+                sleeper.sleepNanos(delay);
+            delay = read.collect();
+        }
+    }
+
+    /**
+     * Runs the read on the shared executor.
+     *
+     * @see #runAsync(PhasedRead, ScheduledExecutorService)
+     */
+    public static <T extends PhasedRead> CompletableFuture<T> runAsync(T read) {
+        return runAsync(read, EXECUTOR);
+    }
+
+    /**
+     * Acquires the gate of the read and runs all phases on the executor, scheduling each phase
+     * when the previous one asks for it. No thread is blocked while the device converts.
+     * <p>
+     * The future completes on a thread of the executor, dependent actions that may block should
+     * use the async variants of {@link CompletableFuture}.
+     *
+     * @param read     the read
+     * @param executor executes the phases
+     * @return future completed with the read, whose value is available, or with the exception
+     * that made the read fail
+     */
+    public static <T extends PhasedRead> CompletableFuture<T> runAsync(final T read,
+                                                                      final ScheduledExecutorService executor) {
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+        read.getGate().acquireAsync()
+                .thenRunAsync(() -> step(read, true, result, executor), executor)
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        // The executor rejected the first phase
+                        read.getGate().release();
+                        result.completeExceptionally(e);
+                    }
+                });
+        return result;
+    }
+
+    private static <T extends PhasedRead> void step(final T read, boolean trigger, final CompletableFuture<T> result,
+                                                    final ScheduledExecutorService executor) {
+        long delay;
+        try {
+            delay = trigger ? read.trigger() : read.collect();
+        } catch (IOException | RuntimeException e) {
+            read.getGate().release();
+            result.completeExceptionally(e);
+            return;
+        }
+        if (delay == PhasedRead.COMPLETE) {
+            read.getGate().release();
+            result.complete(read);
+            return;
+        }
+        try {
+            executor.schedule(() -> step(read, false, result, executor), Math.max(0, delay), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            read.getGate().release();
+            result.completeExceptionally(e);
+        }
+    }
+}
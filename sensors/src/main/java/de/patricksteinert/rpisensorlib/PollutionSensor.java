@@ -2,17 +2,25 @@ package de.patricksteinert.rpisensorlib;
 
 import com.pi4j.io.i2c.I2CBus;
 import com.pi4j.io.i2c.I2CDevice;
-import com.pi4j.io.i2c.I2CFactory;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CDevice;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class PollutionSensor {
 
+    private static final long MEASUREMENT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private ManagedI2CBus bus;
     private I2CDevice device;
+    private final DeviceGate gate = new DeviceGate();
 
     public PollutionSensor() {
         try {
-            I2CBus bus = I2CFactory.getInstance(I2CBus.BUS_1);
+            bus = I2CBusManager.getInstance().getBus(I2CBus.BUS_1);
             device = bus.getDevice(0x04);
         } catch (IOException e) {
             e.printStackTrace();
@@ -20,11 +28,73 @@ public class PollutionSensor {
 
     }
 
+    /**
+     * @param device the sensor, e.g. on a simulated bus
+     */
+    public PollutionSensor(ManagedI2CDevice device) {
+        this.bus = device.getBus();
+        this.device = device;
+    }
+
     public int readValue() throws IOException, InterruptedException {
         System.out.println("Sending 1");
-        device.write((byte) '1');
-        Thread.sleep(1000);
-        return device.read();
+        return (int) PhasedReads.run(valueRead());
+    }
+
+    /**
+     * Reads the value without blocking the caller. The one second
+     * measurement time is a timer event instead of a sleep.
+     *
+     * @return future completed with the sensor value
+     * @see PhasedReads#runAsync(PhasedRead)
+     */
+    public CompletableFuture<Integer> readValueAsync() {
+        return PhasedReads.runAsync(valueRead()).thenApply(read -> (int) read.getValue());
+    }
+
+    /**
+     * Returns a phased read for the
+     * {@link de.patricksteinert.rpisensorlib.scheduler.SensorScheduler}. The read
+     * requests a measurement and collects it one second later.
+     *
+     * @return a new phased read delivering the sensor value
+     */
+    public PhasedRead valueRead() {
+        return new PhasedRead() {
+            private double value;
+
+            @Override
+            public long trigger() throws IOException {
+                device.write((byte) '1');
+                return MEASUREMENT_NANOS;
+            }
+
+            @Override
+            public long collect() throws IOException {
+                value = device.read();
+                return COMPLETE;
+            }
+
+            @Override
+            public double getValue() {
+                return value;
+            }
+
+            @Override
+            public DeviceGate getGate() {
+                return gate;
+            }
+
+            @Override
+            public String getBusId() {
+                return bus.getId();
+            }
+
+            @Override
+            public Sleeper getSleeper() {
+                return bus.getSleeper();
+            }
+        };
     }
 
 
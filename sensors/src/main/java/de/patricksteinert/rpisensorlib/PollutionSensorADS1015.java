@@ -7,15 +7,30 @@ import com.pi4j.io.gpio.GpioController;
 import com.pi4j.io.gpio.GpioFactory;
 import com.pi4j.io.gpio.GpioPinAnalogInput;
 import com.pi4j.io.i2c.I2CBus;
-import com.pi4j.io.i2c.I2CDevice;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CDevice;
 
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class PollutionSensorADS1015 {
 
-    private I2CDevice device;
-    private ADS1015GpioProvider gpioProvider;
+    private static final int POINTER_CONVERSION = 0x00;
+    private static final int POINTER_CONFIG = 0x01;
+    // Single-shot conversion of A0 against ground at 1600 SPS, comparator disabled, as the
+    // provider of Pi4J starts it; the gain is taken from the provider
+    private static final int CONFIG_SINGLE_SHOT_A0 = 0x8000 | 0x4000 | 0x0100 | 0x0080 | 0x0003;
+    // Conversion time plus the 10% oscillator tolerance and the wake up time
+    private static final long CONVERSION_NANOS = TimeUnit.MICROSECONDS.toNanos(25)
+            + ADS1015Scanner.DataRate.SPS_1600.getPeriodNanos() * 11 / 10;
+
+    private ManagedI2CDevice device;
+    private ManagedI2CBus bus;
+    private final DeviceGate gate = new DeviceGate();
+    private Provider gpioProvider;
 
     public PollutionSensorADS1015() {
         try {
@@ -30,7 +45,9 @@ public class PollutionSensorADS1015 {
             final GpioController gpio = GpioFactory.getInstance();
 
             // create custom ADS1015 GPIO provider
-            gpioProvider = new ADS1015GpioProvider(I2CBus.BUS_1, ADS1015GpioProvider.ADS1015_ADDRESS_0x48);
+            bus = I2CBusManager.getInstance().getBus(I2CBus.BUS_1);
+            gpioProvider = new Provider(bus, ADS1015GpioProvider.ADS1015_ADDRESS_0x48);
+            device = bus.getDevice(ADS1015GpioProvider.ADS1015_ADDRESS_0x48);
 
             // provision gpio analog input pins from ADS1015
             GpioPinAnalogInput myInputs[] = {
@@ -41,15 +58,148 @@ public class PollutionSensorADS1015 {
             };
 
             gpioProvider.setProgrammableGainAmplifier(ProgrammableGainAmplifierValue.PGA_4_096V, ADS1015Pin.ALL);
+            stopMonitor();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
     }
 
+    /**
+     * Uses the ADC without provisioning GPIO pins, e.g. on a simulated bus.
+     *
+     * @param bus     the bus of the ADC
+     * @param address the address of the ADC
+     */
+    public PollutionSensorADS1015(ManagedI2CBus bus, int address) {
+        try {
+            this.bus = bus;
+            gpioProvider = new Provider(bus, address);
+            device = bus.getDevice(address);
+            gpioProvider.setProgrammableGainAmplifier(ProgrammableGainAmplifierValue.PGA_4_096V, ADS1015Pin.ALL);
+            stopMonitor();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops the background monitor of the ADC provider; its conversions of all inputs would
+     * switch the input multiplexer between the trigger and the collect of a read.
+     */
+    private void stopMonitor() {
+        try {
+            gpioProvider.shutdownMonitor();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the background monitor of the ADC provider.
+     */
+    public void shutdown() {
+        if (!gpioProvider.isShutdown())
+            gpioProvider.shutdown();
+    }
+
+    /**
+     * Creates a scanner sampling several inputs at a high rate. The background monitor of
+     * the ADC provider is stopped and waited for, its config writes would switch the input
+     * multiplexer and disable the ALERT/RDY pin under the scanner; {@link #readValue()}
+     * keeps working and waits while the scanner runs.
+     *
+     * @param dataRate conversions per second
+     * @return a new scanner, add the channels and start it
+     * @throws InterruptedException if interrupted while the monitor stops
+     */
+    public ADS1015Scanner newScanner(ADS1015Scanner.DataRate dataRate) throws InterruptedException {
+        gpioProvider.shutdownMonitor();
+        return new ADS1015Scanner(device, gate, dataRate);
+    }
+
     public int readValue() throws IOException, InterruptedException {
-        return (int) gpioProvider.getImmediateValue(ADS1015Pin.INPUT_A0);
+        return (int) PhasedReads.run(valueRead());
+    }
+
+    /**
+     * Reads the value without blocking the caller.
+     *
+     * @return future completed with the raw conversion result of input A0
+     * @see PhasedReads#runAsync(PhasedRead)
+     */
+    public CompletableFuture<Integer> readValueAsync() {
+        return PhasedReads.runAsync(valueRead()).thenApply(read -> (int) read.getValue());
     }
 
+    /**
+     * Returns a phased read of input A0 for the
+     * {@link de.patricksteinert.rpisensorlib.scheduler.SensorScheduler}. The trigger starts a
+     * single-shot conversion, the collect reads the conversion register once it is done.
+     *
+     * @return a new phased read delivering the raw conversion result
+     */
+    public PhasedRead valueRead() {
+        return new PhasedRead() {
+            private double value;
+
+            @Override
+            public long trigger() throws IOException {
+                int config = CONFIG_SINGLE_SHOT_A0
+                        | gpioProvider.getProgrammableGainAmplifier(ADS1015Pin.INPUT_A0).getConfigValue();
+                device.write(POINTER_CONFIG, new byte[]{(byte) (config >> 8), (byte) config}, 0, 2);
+                return CONVERSION_NANOS;
+            }
+
+            @Override
+            public long collect() throws IOException {
+                byte[] conversion = new byte[2];
+                int read = device.read(POINTER_CONVERSION, conversion, 0, 2);
+                if (read != 2)
+                    throw new IOException("Short read of ADS1015 conversion register: " + read + " of 2 bytes");
+                // 12 bit two's complement, left aligned
+                value = (short) (((conversion[0] & 0xFF) << 8) | (conversion[1] & 0xFF)) >> 4;
+                return COMPLETE;
+            }
+
+            @Override
+            public double getValue() {
+                return value;
+            }
+
+            @Override
+            public DeviceGate getGate() {
+                return gate;
+            }
+
+            @Override
+            public String getBusId() {
+                return bus.getId();
+            }
 
+            @Override
+            public Sleeper getSleeper() {
+                return bus.getSleeper();
+            }
+        };
+    }
+
+    /**
+     * Gives access to the monitor thread, which {@link ADS1015GpioProvider#shutdown()} only
+     * asks to stop.
+     */
+    private static final class Provider extends ADS1015GpioProvider {
+
+        Provider(I2CBus bus, int address) throws IOException {
+            super(bus, address);
+        }
+
+        void shutdownMonitor() throws InterruptedException {
+            Thread running = monitor;
+            if (!isShutdown())
+                shutdown();
+            if (running != null)
+                running.join();
+        }
+    }
 }
@@ -1,28 +1,83 @@
 package de.patricksteinert.rpisensorlib;
 
-import com.pi4j.io.gpio.*;
+import com.pi4j.io.gpio.GpioFactory;
+import com.pi4j.io.gpio.RaspiPin;
 
-import java.util.Date;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 public class SHT15 {
 
-    private final GpioController gpio;
-    private GpioPinDigitalOutput sck;
-    private GpioPinDigitalMultipurpose data;
+    private final TwoWireInterface wire;
 
 
-    private static final double D1 = -40.0;  //# for 14 Bit @ 5V
-    private static final double D2 = 0.01; // # for 14 Bit DEGC
+    public static final double D1 = -40.0;  //# for 14 Bit @ 5V
+    public static final double D2 = 0.01; // # for 14 Bit DEGC
 
-    private static final double C1 = -2.0468; //       # for 12 Bit
-    private static final double C2 = 0.0367; //       # for 12 Bit
-    private static final double C3 = -0.0000015955; // # for 12 Bit
-    private static final double T1 = 0.01; //      # for 14 Bit @ 5V
-    private static final double T2 = 0.00008; //   # for 14 Bit @ 5V
+    public static final double C1 = -2.0468; //       # for 12 Bit
+    public static final double C2 = 0.0367; //       # for 12 Bit
+    public static final double C3 = -0.0000015955; // # for 12 Bit
+    public static final double T1 = 0.01; //      # for 14 Bit @ 5V
+    public static final double T2 = 0.00008; //   # for 14 Bit @ 5V
 
-    private long lastInvocationTime;
+    public static final double D2_LOW = 0.04; //  # for 12 Bit DEGC
+    public static final double C1_LOW = -2.0468; //   # for 8 Bit
+    public static final double C2_LOW = 0.5872; //    # for 8 Bit
+    public static final double C3_LOW = -0.00040845; // # for 8 Bit
+    public static final double T1_LOW = 0.01; //  # for 8 Bit @ 5V
+    public static final double T2_LOW = 0.00128; // # for 8 Bit @ 5V
 
+    private static final int TEMPERATURE_COMMAND = 0x03;
+    private static final int HUMIDITY_COMMAND = 0x05;
+    private static final int READ_STATUS_COMMAND = 0x07;
+    private static final int WRITE_STATUS_COMMAND = 0x06;
+
+    private static final int STATUS_LOW_RESOLUTION = 0x01;
+    // Low resolution, OTP reload and heater; the remaining bits are read only
+    private static final int STATUS_WRITABLE = 0x07;
+
+    private static final long RESULT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long RESULT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Minimum clock high and low time at 5 V
+    public static final long DEFAULT_CLOCK_HALF_PERIOD_NANOS = 100;
+
+    // Self-heating stays below 0.1 C if the sensor is active at most 10% of the time
+    private static final int IDLE_PER_BUSY = 9;
+
+    private final DeviceGate gate = new DeviceGate();
+
+    // Earliest start of the next conversion that keeps the duty cycle, guarded by the gate
+    private boolean paced;
+    private long nextStartNanos;
+
+    // Selects the conversion coefficients, written holding the gate
+    private volatile Resolution resolution = Resolution.HIGH;
+    // Writable bits of the status register, they seed the CRC; guarded by the gate
+    private int status;
+
+    private volatile long clockHalfPeriodNanos = DEFAULT_CLOCK_HALF_PERIOD_NANOS;
+
+    /**
+     * Measurement resolution, set in the status register.
+     */
+    public enum Resolution {
+        /**
+         * 14 bit temperature, 12 bit humidity; about 320 ms and 80 ms per conversion.
+         */
+        HIGH,
+        /**
+         * 12 bit temperature, 8 bit humidity; about 80 ms and 20 ms per conversion.
+         */
+        LOW
+    }
+
+    /**
+     * @deprecated the commands are sent as bytes, this is no longer used by the driver
+     */
+    @Deprecated
     public static short[] bitStringToShortArray(String s) {
         int len = s.length();
         short[] data = new short[len];
@@ -43,59 +98,249 @@ public class SHT15 {
     }
 
     public SHT15() {
-        gpio = GpioFactory.getInstance();
+        this(new GpioTwoWireInterface(GpioFactory.getInstance(), RaspiPin.GPIO_07, RaspiPin.GPIO_00));
+    }
+
+    /**
+     * @param wire the clock and data line the sensor is connected to
+     */
+    public SHT15(TwoWireInterface wire) {
+        this.wire = wire;
         init();
     }
 
     public void reset() {
-        data.high();
+        wire.setData(true);
         for (int i = 9; i > 0; i--) {
-            try {
-                clockTick(PinState.HIGH);
-                clockTick(PinState.LOW);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
+            clockTick(true);
+            clockTick(false);
         }
     }
 
-    private void clockTick(PinState state) throws InterruptedException {
-        sck.setState(state);
-        // Thread.sleep(0.);
-        TimeUnit.NANOSECONDS.sleep(100);
+    /**
+     * Sets how long the clock line stays high and low. The sensor needs 100 ns at 5 V and up
+     * to 500 ns below 4.5 V; with 0 the GPIO writes alone set the pace.
+     *
+     * @param nanos the half period of the clock
+     */
+    public void setClockHalfPeriodNanos(long nanos) {
+        if (nanos < 0)
+            throw new IllegalArgumentException("Invalid clock half period: " + nanos + " ns");
+        clockHalfPeriodNanos = nanos;
+    }
 
+    public long getClockHalfPeriodNanos() {
+        return clockHalfPeriodNanos;
     }
 
+    private void clockTick(boolean high) {
+        wire.setClock(high);
+        long halfPeriod = clockHalfPeriodNanos;
+        if (halfPeriod > 0) {
+            // Sleeping parks the thread for tens of microseconds, far longer than an edge
+            long deadline = System.nanoTime() + halfPeriod;
+            while (System.nanoTime() - deadline < 0) {
+                // spin
+            }
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted())
+            throw new InterruptedException();
+    }
+
+    /**
+     * The sensor keeps its status register until power off, e.g. the low resolution set by
+     * a previous process; it is read to pick the conversion coefficients and seed the CRC.
+     */
     private void init() {
-        sck = gpio.provisionDigitalOutputPin(RaspiPin.GPIO_07, "SHT15 SCK", PinState.LOW);
-        data = gpio.provisionDigitalMultipurposePin(RaspiPin.GPIO_00, "SHT DATA", PinMode.DIGITAL_OUTPUT);
-        data.low();
+        wire.setClock(false);
+        wire.setDataOutput(true);
+        wire.setData(false);
+        reset();
+        try {
+            readStatus();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException e) {
+            e.printStackTrace();
+        }
     }
 
 
     public double readTemperature() throws InterruptedException {
-        internalWait();
-        return internalReadTemperature();
+        gate.acquire();
+        try {
+            awaitDutyCycle();
+            return internalReadTemperature();
+        } finally {
+            gate.release();
+        }
     }
 
+    /**
+     * Reads the relative humidity. The humidity is compensated with the temperature, so this
+     * measures both; use {@link #readTemperatureAndHumidity()} if the temperature is needed too.
+     *
+     * @return the relative humidity in percent
+     */
     public double readHumidity() throws InterruptedException {
-        internalWait();
-        return internalReadHumidity(internalReadTemperature());
+        return readTemperatureAndHumidity().getHumidity();
+    }
 
+    /**
+     * Reads temperature and relative humidity with one conversion each, the humidity is
+     * compensated with the temperature of the same read.
+     *
+     * @return the temperature and the relative humidity
+     */
+    public Measurement readTemperatureAndHumidity() throws InterruptedException {
+        gate.acquire();
+        try {
+            awaitDutyCycle();
+            double temperature = internalReadTemperature();
+            return new Measurement(temperature, internalReadHumidity(temperature));
+        } finally {
+            gate.release();
+        }
     }
 
-    private double internalReadHumidity(double temperature) {
+    /**
+     * Reads the status register.
+     *
+     * @return the status register, bit 0 selects the low resolution, bit 6 signals a supply
+     * voltage below 2.47 V
+     */
+    public int readStatus() throws InterruptedException {
+        gate.acquire();
         try {
-            short[] b = bitStringToShortArray("00000101");
-            sendCommand(b);
-            waitForResult();
-            double rawHumidity = getData16Bit();
-            skipCrc();
+            sendCommand(READ_STATUS_COMMAND);
+            int value = readByte(true);
+            int crc = readByte(false);
+            // The CRC is seeded with the status register just read
+            verifyCrc(crc8(crc8(reverse(value & 0x0F), READ_STATUS_COMMAND), value), crc, READ_STATUS_COMMAND);
+            status = value & STATUS_WRITABLE;
+            resolution = (value & STATUS_LOW_RESOLUTION) != 0 ? Resolution.LOW : Resolution.HIGH;
+            return value;
+        } finally {
+            gate.release();
+        }
+    }
+
+    /**
+     * Writes the writable bits of the status register. The resolution is taken from bit 0,
+     * better use {@link #setResolution(Resolution)} to change it.
+     *
+     * @param status the status register
+     */
+    public void writeStatus(int status) throws InterruptedException {
+        gate.acquire();
+        try {
+            internalWriteStatus(status & STATUS_WRITABLE);
+            this.status = status & STATUS_WRITABLE;
+            resolution = (status & STATUS_LOW_RESOLUTION) != 0 ? Resolution.LOW : Resolution.HIGH;
+        } finally {
+            gate.release();
+        }
+    }
+
+    /**
+     * Sets the measurement resolution, keeping the other bits of the status register. The
+     * conversion coefficients follow the resolution.
+     *
+     * @param resolution the resolution of the following measurements
+     */
+    public void setResolution(Resolution resolution) throws InterruptedException {
+        int status = readStatus() & STATUS_WRITABLE;
+        if (resolution == Resolution.LOW)
+            status |= STATUS_LOW_RESOLUTION;
+        else
+            status &= ~STATUS_LOW_RESOLUTION;
+        writeStatus(status);
+    }
+
+    /**
+     * @return the resolution last read or set
+     */
+    public Resolution getResolution() {
+        return resolution;
+    }
+
+    private void internalWriteStatus(int status) throws InterruptedException {
+        sendCommand(WRITE_STATUS_COMMAND);
+        checkInterrupted();
+        wire.setDataOutput(true);
+        for (int i = 7; i >= 0; i--) {
+            wire.setData((status & (1 << i)) != 0);
+            clockTick(true);
+            clockTick(false);
+        }
+
+        // The sensor acknowledges by pulling the data line low
+        wire.setDataOutput(false);
+        clockTick(true);
+        boolean ack = !wire.isDataHigh();
+        clockTick(false);
+        if (!ack)
+            throw new IllegalStateException("SHT15 did not acknowledge the status register");
+    }
+
+    /**
+     * Reads the temperature without blocking the caller. The wait for the result is a
+     * timer event instead of a sleep.
+     *
+     * @return future completed with the temperature in Celsius
+     * @see PhasedReads#runAsync(PhasedRead)
+     */
+    public CompletableFuture<Double> readTemperatureAsync() {
+        return PhasedReads.runAsync(temperatureRead()).thenApply(PhasedRead::getValue);
+    }
+
+    /**
+     * Reads the relative humidity without blocking the caller.
+     *
+     * @return future completed with the relative humidity in percent
+     */
+    public CompletableFuture<Double> readHumidityAsync() {
+        return PhasedReads.runAsync(humidityRead()).thenApply(PhasedRead::getValue);
+    }
 
-            double linearHumidity = C1 + C2 * rawHumidity + C3 * rawHumidity * rawHumidity;
+    /**
+     * Reads temperature and relative humidity without blocking the caller.
+     *
+     * @return future completed with the temperature and the relative humidity
+     */
+    public CompletableFuture<Measurement> readTemperatureAndHumidityAsync() {
+        return PhasedReads.runAsync(new MeasurementRead(true))
+                .thenApply(read -> new Measurement(read.temperature, read.value));
+    }
+
+    /**
+     * Returns a phased read of the temperature for the
+     * {@link de.patricksteinert.rpisensorlib.scheduler.SensorScheduler}. Instead of
+     * sleeping the read polls the data line, which the sensor pulls low when the
+     * measurement is done.
+     *
+     * @return a new phased read delivering the temperature in Celsius
+     */
+    public PhasedRead temperatureRead() {
+        return new MeasurementRead(false);
+    }
 
-            return (temperature - 25.0) * (T1 + T2 * rawHumidity) + linearHumidity;
+    /**
+     * Returns a phased read of the relative humidity. The read measures the temperature
+     * first, which is needed for the compensation.
+     *
+     * @return a new phased read delivering the relative humidity in percent
+     */
+    public PhasedRead humidityRead() {
+        return new MeasurementRead(true);
+    }
 
+    private double internalReadHumidity(double temperature) {
+        try {
+            return convertHumidity(measure(HUMIDITY_COMMAND), temperature);
         } catch (InterruptedException e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
             return Double.NaN;
@@ -105,111 +350,274 @@ public class SHT15 {
 
     private double internalReadTemperature() {
         try {
-            short[] b = bitStringToShortArray("00000011");
-            sendCommand(b);
-            waitForResult();
-            double rawTemperature = getData16Bit();
-            skipCrc();
-            return rawTemperature * D2 + D1;
+            return convertTemperature(measure(TEMPERATURE_COMMAND));
         } catch (InterruptedException e) {
             e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
             return Double.NaN;
         }
     }
 
-    private void skipCrc() throws InterruptedException {
-        // Skip ack to end trans (no CRC)
-        data.setMode(PinMode.DIGITAL_OUTPUT);
-        data.high();
-        clockTick(PinState.HIGH);
-        clockTick(PinState.LOW);
+    private int measure(int command) throws InterruptedException {
+        long startNanos = wire.getSleeper().nanoTime();
+        try {
+            sendCommand(command);
+            waitForResult();
+            return readMeasurement(command);
+        } finally {
+            conversionDone(startNanos);
+        }
+    }
+
+    private double convertTemperature(double rawTemperature) {
+        return rawTemperature * (resolution == Resolution.LOW ? D2_LOW : D2) + D1;
+    }
+
+    private double convertHumidity(double rawHumidity, double temperature) {
+        if (resolution == Resolution.LOW) {
+            double linearHumidity = C1_LOW + C2_LOW * rawHumidity + C3_LOW * rawHumidity * rawHumidity;
+            return (temperature - 25.0) * (T1_LOW + T2_LOW * rawHumidity) + linearHumidity;
+        }
+        double linearHumidity = C1 + C2 * rawHumidity + C3 * rawHumidity * rawHumidity;
+        return (temperature - 25.0) * (T1 + T2 * rawHumidity) + linearHumidity;
     }
 
-    private int getData16Bit() throws InterruptedException {
-        data.setMode(PinMode.DIGITAL_INPUT);
+    /**
+     * Reads the two bytes of a measurement and their CRC.
+     */
+    private int readMeasurement(int command) throws InterruptedException {
+        int msb = readByte(true);
+        int lsb = readByte(true);
+        int crc = readByte(false);
+        verifyCrc(crc8(crc8(crc8(reverse(status & 0x0F), command), msb), lsb), crc, command);
+        return (msb << 8) | lsb;
+    }
 
-        // Get the most significant bits
+    /**
+     * Reads a byte, then acknowledges it to receive the next one or ends the transmission.
+     */
+    private int readByte(boolean ack) throws InterruptedException {
+        checkInterrupted();
+        wire.setDataOutput(false);
         int value = shiftIn(8);
-        value *= 256;
+        wire.setDataOutput(true);
+        wire.setData(!ack);
+        clockTick(true);
+        clockTick(false);
+        return value;
+    }
 
-        // Send the required ack
-        data.setMode(PinMode.DIGITAL_OUTPUT);
-        data.setState(PinState.HIGH);
-        data.setState(PinState.LOW);
-        clockTick(PinState.HIGH);
-        clockTick(PinState.LOW);
+    /**
+     * The sensor sends the CRC with its bits reversed.
+     */
+    private static void verifyCrc(int crc, int received, int command) {
+        if (reverse(crc) != received)
+            throw new IllegalStateException(String.format(
+                    "SHT15 CRC mismatch for command 0x%02X: received 0x%02X, expected 0x%02X",
+                    command, received, reverse(crc)));
+    }
 
-        // Get the most significant bits
-        data.setMode(PinMode.DIGITAL_INPUT);
-        value |= shiftIn(8);
+    /**
+     * CRC-8 with the polynomial x^8 + x^5 + x^4 + 1, most significant bit first.
+     */
+    private static int crc8(int crc, int data) {
+        crc ^= data;
+        for (int i = 0; i < 8; i++)
+            crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x31) & 0xFF : (crc << 1) & 0xFF;
+        return crc;
+    }
 
-        return value;
+    private static int reverse(int b) {
+        return Integer.reverse(b) >>> 24;
     }
 
-    private int shiftIn(int bitNum) throws InterruptedException {
+    private int shiftIn(int bitNum) {
         int value = 0;
         for (int i = 0; i < bitNum; i++) {
-            clockTick(PinState.HIGH);
-            value = value * 2 + data.getState().getValue();
-            clockTick(PinState.LOW);
+            clockTick(true);
+            value = value * 2 + (wire.isDataHigh() ? 1 : 0);
+            clockTick(false);
         }
         return value;
     }
 
     private void waitForResult() throws InterruptedException {
-        data.setMode(PinMode.DIGITAL_INPUT);
-        PinState ack = null;
-        for (int i = 0; i < 100; i++) {
-            TimeUnit.MILLISECONDS.sleep(10);
-            ack = data.getState();
-            if (ack == PinState.LOW) break;
+        wire.setDataOutput(false);
+        if (!wire.awaitDataLow(RESULT_TIMEOUT_NANOS))
+            throw new IllegalStateException("SHT15 measurement timed out");
+    }
+
+    private void sendCommand(int command) throws InterruptedException {
+        checkInterrupted();
+        wire.setDataOutput(true);
+
+        wire.setData(true);
+        clockTick(true);
+        wire.setData(false);
+        clockTick(false);
+        clockTick(true);
+        wire.setData(true);
+        clockTick(false);
+
+        for (int i = 7; i >= 0; i--) {
+            wire.setData((command & (1 << i)) != 0);
+            clockTick(true);
+            clockTick(false);
         }
-        if (ack == PinState.HIGH) throw new IllegalStateException("System Error");
+
+        // The sensor acknowledges by pulling the data line low
+        clockTick(true);
+        wire.setDataOutput(false);
+        boolean ack = !wire.isDataHigh();
+        clockTick(false);
+        if (!ack)
+            throw new IllegalStateException(String.format("SHT15 did not acknowledge command 0x%02X", command));
     }
 
-    private void sendCommand(short[] b) throws InterruptedException {
+    /**
+     * @return nanoseconds until the sensor may start the next conversion
+     */
+    private long idleNanos() {
+        return paced ? Math.max(0, nextStartNanos - wire.getSleeper().nanoTime()) : 0;
+    }
 
-        data.setMode(PinMode.DIGITAL_OUTPUT);
+    private void awaitDutyCycle() throws InterruptedException {
+        long idle = idleNanos();
+        if (idle > 0)
+            wire.getSleeper().sleepNanos(idle);
+    }
 
-        data.high();
-        clockTick(PinState.HIGH);
-        data.low();
-        clockTick(PinState.LOW);
-        clockTick(PinState.HIGH);
-        data.high();
-        clockTick(PinState.LOW);
+    /**
+     * Adds the idle time owed for a conversion. Conversions of one read run back to back, the
+     * idle time of all of them is added up before the next read.
+     */
+    private void conversionDone(long startNanos) {
+        long now = wire.getSleeper().nanoTime();
+        nextStartNanos = (paced ? Math.max(nextStartNanos, now) : now) + IDLE_PER_BUSY * (now - startNanos);
+        paced = true;
+    }
 
-        for (int i = 0; i < 8; i++) {
-            data.setState(b[i] == 1 ? true : false);
-            clockTick(PinState.HIGH);
-            clockTick(PinState.LOW);
+    /**
+     * Temperature and optionally humidity measurement, polling the data line instead of
+     * sleeping until the result is ready. Missing acknowledges, CRC mismatches and timeouts
+     * are reported as {@link IOException}, as {@link PhasedRead} documents.
+     */
+    private final class MeasurementRead implements PhasedRead {
+        private final boolean humidity;
+        private boolean waitingForDutyCycle;
+        private boolean measuringHumidity;
+        private long startNanos;
+        private double temperature;
+        private double value;
+
+        MeasurementRead(boolean humidity) {
+            this.humidity = humidity;
         }
 
-        clockTick(PinState.HIGH);
+        @Override
+        public long trigger() throws IOException {
+            long idle = idleNanos();
+            waitingForDutyCycle = idle > 0;
+            return waitingForDutyCycle ? idle : startMeasurement(false);
+        }
 
-        data.setMode(PinMode.DIGITAL_INPUT);
-        PinState ack = data.getState();
-        if (ack != PinState.LOW) {
-            // Error
+        private long startMeasurement(boolean humidity) throws IOException {
+            try {
+                sendCommand(humidity ? HUMIDITY_COMMAND : TEMPERATURE_COMMAND);
+            } catch (InterruptedException e) {
+                throw interrupted();
+            } catch (IllegalStateException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            wire.setDataOutput(false);
+            measuringHumidity = humidity;
+            startNanos = wire.getSleeper().nanoTime();
+            return RESULT_POLL_NANOS;
         }
 
-        clockTick(PinState.LOW);
+        @Override
+        public long collect() throws IOException {
+            if (waitingForDutyCycle) {
+                waitingForDutyCycle = false;
+                return startMeasurement(false);
+            }
+            if (wire.isDataHigh()) {
+                if (wire.getSleeper().nanoTime() - startNanos >= RESULT_TIMEOUT_NANOS)
+                    throw new IOException("SHT15 measurement timed out");
+                return RESULT_POLL_NANOS;
+            }
 
-        ack = data.getState();
+            double raw;
+            try {
+                raw = readMeasurement(measuringHumidity ? HUMIDITY_COMMAND : TEMPERATURE_COMMAND);
+            } catch (InterruptedException e) {
+                throw interrupted();
+            } catch (IllegalStateException e) {
+                throw new IOException(e.getMessage(), e);
+            } finally {
+                conversionDone(startNanos);
+            }
 
-        if (ack != PinState.HIGH) {
-            // Error
+            if (!measuringHumidity) {
+                temperature = convertTemperature(raw);
+                if (humidity)
+                    return startMeasurement(true);
+                value = temperature;
+            } else {
+                value = convertHumidity(raw, temperature);
+            }
+            return COMPLETE;
         }
 
-    }
+        private InterruptedIOException interrupted() {
+            Thread.currentThread().interrupt();
+            return new InterruptedIOException("Interrupted while talking to SHT15");
+        }
 
-    private void internalWait() throws InterruptedException {
-        long lastInvocationDelta = new Date().getTime() - lastInvocationTime;
-        if (lastInvocationDelta < 1000) {
-            TimeUnit.MILLISECONDS.sleep(lastInvocationDelta);
+        @Override
+        public double getValue() {
+            return value;
+        }
+
+        @Override
+        public DeviceGate getGate() {
+            return gate;
+        }
+
+        @Override
+        public String getBusId() {
+            return "gpio";
+        }
+
+        @Override
+        public Sleeper getSleeper() {
+            return wire.getSleeper();
         }
-        lastInvocationTime = new Date().getTime();
     }
 
+    /**
+     * Temperature and relative humidity of one read.
+     */
+    public static class Measurement {
+        private final double temperature;
+        private final double humidity;
 
+        public Measurement(double temperature, double humidity) {
+            this.temperature = temperature;
+            this.humidity = humidity;
+        }
+
+        /**
+         * @return temperature in Celsius
+         */
+        public double getTemperature() {
+            return temperature;
+        }
+
+        /**
+         * @return relative humidity in percent
+         */
+        public double getHumidity() {
+            return humidity;
+        }
+    }
 }
@@ -0,0 +1,30 @@
+package de.patricksteinert.rpisensorlib;
+
+/**
+ * Receives the samples of a sensor.
+ */
+public interface SampleListener {
+
+    /**
+     * @param timestampNanos {@link System#nanoTime()} when the sample was taken
+     * @param value          the sample
+     */
+    void onSample(long timestampNanos, double value);
+
+    /**
+     * Passes every sample on to all listeners, e.g. a ring buffer and aggregation windows.
+     *
+     * @param listeners the listeners, called in order
+     * @return the combined listener
+     */
+    static SampleListener all(final SampleListener... listeners) {
+        final SampleListener[] copy = listeners.clone();
+        return new SampleListener() {
+            @Override
+            public void onSample(long timestampNanos, double value) {
+                for (SampleListener listener : copy)
+                    listener.onSample(timestampNanos, value);
+            }
+        };
+    }
+}
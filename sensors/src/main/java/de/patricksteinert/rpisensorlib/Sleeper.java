@@ -0,0 +1,52 @@
+package de.patricksteinert.rpisensorlib;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Time source of the drivers and emulators: the monotonic clock they measure conversion times
+ * with and the sleeps they wait for conversions with. Drivers take it from their bus, see
+ * {@link de.patricksteinert.rpisensorlib.bus.ManagedI2CBus#getSleeper()}, or their
+ * {@link TwoWireInterface}; it is the system clock unless the bus is simulated with another
+ * one, e.g. the virtual clock of a replay, see
+ * {@code de.patricksteinert.rpisensorlib.replay.ReplayClock}.
+ * <p>
+ * Blocking reads use the sleeper, asynchronous reads and the {@code SensorScheduler} always wait
+ * in real time.
+ */
+public abstract class Sleeper {
+
+    /**
+     * {@link System#nanoTime()} and sleeps with sub-millisecond resolution.
+     */
+    public static final Sleeper SYSTEM = new Sleeper() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public void sleepNanos(long nanos) throws InterruptedException {
+            long deadline = System.nanoTime() + nanos;
+            long remaining = nanos;
+            while (remaining > 0) {
+                LockSupport.parkNanos(remaining);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+                remaining = deadline - System.nanoTime();
+            }
+        }
+    };
+
+    /**
+     * @return the monotonic time in nanoseconds, only differences are meaningful
+     */
+    public abstract long nanoTime();
+
+    /**
+     * Sleeps for the given time; returns at once if it is not positive.
+     *
+     * @param nanos time to sleep in nanoseconds
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public abstract void sleepNanos(long nanos) throws InterruptedException;
+}
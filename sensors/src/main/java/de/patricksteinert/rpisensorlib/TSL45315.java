@@ -1,10 +1,14 @@
 package de.patricksteinert.rpisensorlib;
 
 import com.pi4j.io.i2c.I2CBus;
-import com.pi4j.io.i2c.I2CDevice;
-import com.pi4j.io.i2c.I2CFactory;
+import de.patricksteinert.rpisensorlib.bus.I2CBusManager;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CBus;
+import de.patricksteinert.rpisensorlib.bus.ManagedI2CDevice;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class TSL45315 {
 
@@ -14,39 +18,320 @@ public class TSL45315 {
     private static final byte REG_DATAHIGH = 0x05;
     private static final byte REG_ID = 0x0A;
 
-    private I2CDevice light;
+    private static final int COMMAND = 0x80;
+    private static final int MODE_NORMAL = 0x03;
+    private static final int CONFIG_PSAVESKIP = 0x08;
 
-    public TSL45315() {
+    // Auto ranging steps to a faster setting before the count saturates at 0xFFFF
+    private static final int AUTO_RANGE_MAX_COUNT = 60000;
+    public static final int DEFAULT_AUTO_RANGE_MIN_COUNT = 1000;
+
+    // The internal oscillator may run slow or fast, the first cycle after a config change
+    // ends within this margin around the nominal integration time
+    private static final int INTEGRATION_MARGIN_PERCENT = 10;
+
+    /**
+     * Integration time of a measurement; shorter times update the value more often and have
+     * a coarser resolution, the count is scaled by the multiplier.
+     */
+    public enum IntegrationTime {
+        MS_400(0x00, 1, 400),
+        MS_200(0x01, 2, 200),
+        MS_100(0x02, 4, 100);
+
+        private final int config;
+        private final int multiplier;
+        private final long millis;
+
+        IntegrationTime(int config, int multiplier, long millis) {
+            this.config = config;
+            this.multiplier = multiplier;
+            this.millis = millis;
+        }
+
+        private static final IntegrationTime[] SLOW_TO_FAST = values();
+
+        public int getMultiplier() {
+            return multiplier;
+        }
 
-        I2CBus bus = null;
+        public long getMillis() {
+            return millis;
+        }
+    }
+
+    private ManagedI2CBus bus;
+    private ManagedI2CDevice light;
+    private final DeviceGate gate = new DeviceGate();
+
+    // Changed only while holding the gate, so reads see the fields of one config write
+    private volatile IntegrationTime integrationTime = IntegrationTime.MS_400;
+    private volatile boolean powerSave = true;
+    // The data registers hold counts of the previous setting until the first cycle is done,
+    // which is not before settlingNanos and surely by settledNanos. A previous multiplier of 0
+    // is unknown: the config changed while the cycle before may just have been done.
+    private volatile int previousMultiplier = 1;
+    private volatile long settlingNanos;
+    private volatile long settledNanos;
+
+    private volatile boolean autoRange;
+    private volatile int autoRangeMinCount = DEFAULT_AUTO_RANGE_MIN_COUNT;
+
+    public TSL45315() {
         try {
-            bus = I2CFactory.getInstance(I2CBus.BUS_1);
-            light = bus.getDevice(0x29);
+            init(I2CBusManager.getInstance().getBus(I2CBus.BUS_1).getDevice(0x29));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
 
-            // Wake up
-            light.write((byte) (0x80 | REG_CONTROL));
-            light.write((byte) 0x03);
+    /**
+     * @param light the sensor, e.g. on a simulated bus
+     */
+    public TSL45315(ManagedI2CDevice light) {
+        init(light);
+    }
 
-            // Set Speed
-            light.write((byte) (0x80 | REG_CONFIG));
-            light.write((byte) 0x00);
+    private void init(ManagedI2CDevice light) {
+        this.bus = light.getBus();
+        this.light = light;
+        try {
+            writeConfig();
         } catch (IOException e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * Sets the integration time. The value read is scaled with the matching multiplier; until
+     * the first integration with the new time is done it still comes from the previous one.
+     *
+     * @param integrationTime 400 ms, 200 ms for 5 Hz or 100 ms for 10 Hz updates
+     * @throws IOException if sensor communication fails
+     */
+    public void setIntegrationTime(IntegrationTime integrationTime) throws IOException {
+        acquireGate();
+        try {
+            changeIntegrationTime(integrationTime);
+        } finally {
+            gate.release();
+        }
+    }
+
+    private void changeIntegrationTime(IntegrationTime integrationTime) throws IOException {
+        keepMultiplier();
+        this.integrationTime = integrationTime;
+        writeConfig();
+    }
+
+    public IntegrationTime getIntegrationTime() {
+        return integrationTime;
+    }
+
+    /**
+     * Enables the power save state between integration cycles (default). Without it the sensor
+     * integrates back to back, drawing more current.
+     *
+     * @param powerSave false to skip the power save state
+     * @throws IOException if sensor communication fails
+     */
+    public void setPowerSave(boolean powerSave) throws IOException {
+        acquireGate();
+        try {
+            keepMultiplier();
+            this.powerSave = powerSave;
+            writeConfig();
+        } finally {
+            gate.release();
+        }
+    }
 
+    public boolean isPowerSave() {
+        return powerSave;
+    }
 
+    private void acquireGate() throws InterruptedIOException {
+        try {
+            gate.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for TSL45315");
+        }
+    }
+
+    /**
+     * Remembers the multiplier of the counts in the data registers, which stay until the
+     * first cycle after a config change is done.
+     */
+    private void keepMultiplier() {
+        long now = bus.getSleeper().nanoTime();
+        if (now - settledNanos >= 0)
+            previousMultiplier = integrationTime.getMultiplier();
+        else if (now - settlingNanos >= 0)
+            previousMultiplier = 0;
+    }
+
+    /**
+     * Writes the config register and restarts the integration in normal mode. The first cycle
+     * starts at the latest when the transaction does, its end is taken from that time.
+     */
+    private void writeConfig() throws IOException {
+        final IntegrationTime time = integrationTime;
+        final int config = time.config | (powerSave ? 0 : CONFIG_PSAVESKIP);
+        long writeNanos = bus.getSleeper().nanoTime();
+        light.transaction(device -> {
+            device.write((byte) (COMMAND | REG_CONFIG));
+            device.write((byte) config);
+
+            // Wake up, which starts a new integration cycle
+            device.write((byte) (COMMAND | REG_CONTROL));
+            device.write((byte) MODE_NORMAL);
+            return null;
+        });
+        long integrationNanos = TimeUnit.MILLISECONDS.toNanos(time.getMillis());
+        long marginNanos = integrationNanos * INTEGRATION_MARGIN_PERCENT / 100;
+        settlingNanos = writeNanos + integrationNanos - marginNanos;
+        settledNanos = writeNanos + integrationNanos + marginNanos;
+    }
+
+    /**
+     * Switches the integration time with the light: the fastest setting whose count stays
+     * above the minimum count, a slower one when the count drops below it. A step halves or
+     * doubles the count; stepping faster needs four times the minimum, so the count lands
+     * between the thresholds and the setting does not toggle. The switch happens in
+     * {@link #readValue()}, once the count comes from the current setting, while the read
+     * holds the device gate.
+     *
+     * @param autoRange true to enable auto ranging
+     */
+    public void setAutoRange(boolean autoRange) {
+        this.autoRange = autoRange;
+    }
+
+    public boolean isAutoRange() {
+        return autoRange;
+    }
+
+    /**
+     * @param minCount the count auto ranging keeps above, the resolution is one count in
+     *                 minCount; default {@value #DEFAULT_AUTO_RANGE_MIN_COUNT}
+     */
+    public void setAutoRangeMinCount(int minCount) {
+        if (minCount < 1 || minCount * 4 > AUTO_RANGE_MAX_COUNT)
+            throw new IllegalArgumentException("Invalid minimum count: " + minCount);
+        this.autoRangeMinCount = minCount;
     }
 
     public double readValue() throws IOException {
-        int lux;
+        try {
+            return PhasedReads.run(valueRead());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading TSL45315");
+        }
+    }
 
+    /**
+     * Reads the count and scales it with the multiplier of the setting it comes from.
+     *
+     * @return the illuminance in lux, or -1 if the count may come from either setting
+     */
+    private int readLux() throws IOException {
+        long readNanos = bus.getSleeper().nanoTime();
         byte[] luxValue = new byte[2];
-        light.read(0x80 | REG_DATALOW, luxValue, 0, 2);
+        light.read(COMMAND | REG_DATALOW, luxValue, 0, 2);
+        int count = unsignedToBytes(luxValue[1]) << 8 | unsignedToBytes(luxValue[0]);
+
+        if (readNanos - settledNanos >= 0) {
+            int lux = count * integrationTime.getMultiplier();
+            if (autoRange)
+                autoRange(count);
+            return lux;
+        }
+        if (readNanos - settlingNanos < 0 && previousMultiplier != 0)
+            return count * previousMultiplier;
+        return -1;
+    }
+
+    private void autoRange(int count) throws IOException {
+        int index = integrationTime.ordinal();
+        int minCount = autoRangeMinCount;
+        if (index + 1 < IntegrationTime.SLOW_TO_FAST.length
+                && (count >= AUTO_RANGE_MAX_COUNT || count >= 4 * minCount))
+            changeIntegrationTime(IntegrationTime.SLOW_TO_FAST[index + 1]);
+        else if (index > 0 && count < minCount)
+            changeIntegrationTime(IntegrationTime.SLOW_TO_FAST[index - 1]);
+    }
+
+    /**
+     * Reads the ID register: the upper nibble is the part number (0xA for the TSL45315),
+     * the lower one the revision.
+     *
+     * @return the ID as hex string, e.g. "0xa0"
+     * @throws IOException if sensor communication fails
+     */
+    public String readChipId() throws IOException {
+        int raw = light.read(COMMAND | REG_ID);
+        return "0x" + Integer.toHexString(raw & 0xFF);
+    }
+
+    /**
+     * Reads the value without blocking the caller.
+     *
+     * @return future completed with the illuminance in lux
+     * @see PhasedReads#runAsync(PhasedRead)
+     */
+    public CompletableFuture<Double> readValueAsync() {
+        return PhasedReads.runAsync(valueRead()).thenApply(PhasedRead::getValue);
+    }
+
+    /**
+     * Returns a phased read for the
+     * {@link de.patricksteinert.rpisensorlib.scheduler.SensorScheduler}. The sensor
+     * converts continuously, so the read has no conversion time to wait for. Only around the
+     * end of the first cycle after a config change the count may come from either setting;
+     * such a read is dropped and repeated once the cycle is surely done.
+     *
+     * @return a new phased read delivering the illuminance in lux
+     */
+    public PhasedRead valueRead() {
+        return new PhasedRead() {
+            private double value;
+
+            @Override
+            public long trigger() {
+                return 0;
+            }
+
+            @Override
+            public long collect() throws IOException {
+                int lux = readLux();
+                if (lux < 0)
+                    return Math.max(1, settledNanos - bus.getSleeper().nanoTime());
+                value = lux;
+                return COMPLETE;
+            }
+
+            @Override
+            public double getValue() {
+                return value;
+            }
+
+            @Override
+            public DeviceGate getGate() {
+                return gate;
+            }
 
-        lux = unsignedToBytes(luxValue[1]) << 8 | unsignedToBytes(luxValue[0]);
-        lux *= 1; //M=1
+            @Override
+            public String getBusId() {
+                return bus.getId();
+            }
 
-        return lux;
+            @Override
+            public Sleeper getSleeper() {
+                return bus.getSleeper();
+            }
+        };
     }
 
     private static int unsignedToBytes(byte b) {
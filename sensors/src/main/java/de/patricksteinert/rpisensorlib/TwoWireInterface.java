@@ -0,0 +1,62 @@
+package de.patricksteinert.rpisensorlib;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clock and data line of the two-wire interface of the SHT1x sensors. The data line is
+ * open drain: when the host does not drive it, it is pulled up unless the sensor pulls it low.
+ */
+public interface TwoWireInterface {
+
+    /**
+     * Poll interval of {@link #awaitDataLow(long)} where no edge events are available.
+     */
+    long DATA_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * Drives the clock line (SCK).
+     */
+    void setClock(boolean high);
+
+    /**
+     * Switches the data line between driven by the host (output) and released (input).
+     */
+    void setDataOutput(boolean output);
+
+    /**
+     * Sets the level the host drives on the data line while it is an output.
+     */
+    void setData(boolean high);
+
+    /**
+     * @return the level of the data line
+     */
+    boolean isDataHigh();
+
+    /**
+     * @return the clock the driver measures and waits for conversions with
+     */
+    default Sleeper getSleeper() {
+        return Sleeper.SYSTEM;
+    }
+
+    /**
+     * Waits until the data line is low, which is how the sensor signals the end of a
+     * measurement. This implementation polls the line every {@link #DATA_POLL_NANOS};
+     * implementations that can detect the falling edge return as soon as it happens.
+     *
+     * @param timeoutNanos how long to wait at most
+     * @return true if the data line is low, false if it is still high after the timeout
+     */
+    default boolean awaitDataLow(long timeoutNanos) throws InterruptedException {
+        Sleeper sleeper = getSleeper();
+        long deadline = sleeper.nanoTime() + timeoutNanos;
+        while (isDataHigh()) {
+            long remaining = deadline - sleeper.nanoTime();
+            if (remaining <= 0)
+                return false;
+            sleeper.sleepNanos(Math.min(remaining, DATA_POLL_NANOS));
+        }
+        return true;
+    }
+}
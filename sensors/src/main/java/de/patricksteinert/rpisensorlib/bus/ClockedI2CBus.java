@@ -0,0 +1,16 @@
+package de.patricksteinert.rpisensorlib.bus;
+
+import com.pi4j.io.i2c.I2CBus;
+import de.patricksteinert.rpisensorlib.Sleeper;
+
+/**
+ * A bus that runs on a clock of its own, e.g. the virtual clock of a replay. The drivers on
+ * it use that clock when the bus is registered with {@link I2CBusManager#register(int, I2CBus)}.
+ */
+public interface ClockedI2CBus extends I2CBus {
+
+    /**
+     * @return the clock of the bus and its devices
+     */
+    Sleeper getSleeper();
+}
@@ -0,0 +1,88 @@
+package de.patricksteinert.rpisensorlib.bus;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CFactory;
+import de.patricksteinert.rpisensorlib.Sleeper;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Owns the I2C buses of the process. Every bus gets one worker thread that executes all
+ * accesses to it, so drivers on the same bus do not interleave their transactions while
+ * drivers on different buses run in parallel.
+ * <pre>
+ * I2CDevice device = I2CBusManager.getInstance().getBus(I2CBus.BUS_1).getDevice(0x77);
+ * </pre>
+ */
+public class I2CBusManager {
+
+    private static final I2CBusManager INSTANCE = new I2CBusManager();
+
+    private final Map<Integer, ManagedI2CBus> buses = new HashMap<Integer, ManagedI2CBus>();
+
+    public static I2CBusManager getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the managed bus, opening it on first use.
+     *
+     * @param busNumber e.g. {@link I2CBus#BUS_1}
+     * @return the managed bus
+     * @throws IOException if the bus cannot be opened
+     */
+    public synchronized ManagedI2CBus getBus(int busNumber) throws IOException {
+        ManagedI2CBus bus = buses.get(busNumber);
+        if (bus == null) {
+            bus = new ManagedI2CBus(busNumber, I2CFactory.getInstance(busNumber), Sleeper.SYSTEM);
+            buses.put(busNumber, bus);
+        }
+        return bus;
+    }
+
+    /**
+     * Registers an already opened bus under the given number, e.g. a bus of another
+     * I2C implementation. A {@link ClockedI2CBus} brings its clock, other buses use the
+     * system clock.
+     *
+     * @param busNumber the number the bus is looked up with
+     * @param bus       the bus
+     * @return the managed bus
+     */
+    public ManagedI2CBus register(int busNumber, I2CBus bus) {
+        return register(busNumber, bus,
+                bus instanceof ClockedI2CBus ? ((ClockedI2CBus) bus).getSleeper() : Sleeper.SYSTEM);
+    }
+
+    /**
+     * Registers an already opened bus under the given number.
+     *
+     * @param busNumber the number the bus is looked up with
+     * @param bus       the bus
+     * @param sleeper   the clock of the drivers on the bus
+     * @return the managed bus
+     */
+    public synchronized ManagedI2CBus register(int busNumber, I2CBus bus, Sleeper sleeper) {
+        if (buses.containsKey(busNumber))
+            throw new IllegalStateException("I2C bus " + busNumber + " is already open");
+        ManagedI2CBus managed = new ManagedI2CBus(busNumber, bus, sleeper);
+        buses.put(busNumber, managed);
+        return managed;
+    }
+
+    /**
+     * Closes all buses and stops their workers.
+     */
+    public synchronized void shutdown() {
+        for (ManagedI2CBus bus : buses.values()) {
+            try {
+                bus.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        buses.clear();
+    }
+}
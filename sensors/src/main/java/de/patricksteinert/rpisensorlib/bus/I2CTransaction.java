@@ -0,0 +1,23 @@
+package de.patricksteinert.rpisensorlib.bus;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+import java.io.IOException;
+
+/**
+ * A sequence of register accesses that is executed atomically on the bus worker,
+ * without any other access to the same bus in between.
+ * <p>
+ * Transactions should not sleep, as they block all other devices on the bus.
+ *
+ * @param <T> the result type
+ */
+public interface I2CTransaction<T> {
+
+    /**
+     * @param device the device, accessed directly from the bus worker
+     * @return the result of the transaction
+     * @throws IOException if the communication fails
+     */
+    T execute(I2CDevice device) throws IOException;
+}
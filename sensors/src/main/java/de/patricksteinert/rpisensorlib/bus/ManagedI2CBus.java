@@ -0,0 +1,158 @@
+package de.patricksteinert.rpisensorlib.bus;
+
+import com.pi4j.io.i2c.I2CBus;
+import com.pi4j.io.i2c.I2CDevice;
+import de.patricksteinert.rpisensorlib.Sleeper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An I2C bus whose accesses are all executed by one worker thread, so register accesses and
+ * transactions of different threads never interleave on the wire. Different buses have
+ * different workers and run in parallel.
+ * <p>
+ * Instances are obtained from {@link I2CBusManager}.
+ */
+public class ManagedI2CBus implements I2CBus {
+
+    private final int busNumber;
+    private final I2CBus bus;
+    private final Sleeper sleeper;
+    private final ExecutorService worker;
+    private final Map<Integer, ManagedI2CDevice> devices = new ConcurrentHashMap<Integer, ManagedI2CDevice>();
+    private volatile Thread workerThread;
+
+    ManagedI2CBus(final int busNumber, I2CBus bus, Sleeper sleeper) {
+        this.busNumber = busNumber;
+        this.bus = bus;
+        this.sleeper = sleeper;
+        this.worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "i2c-bus-" + busNumber);
+                thread.setDaemon(true);
+                workerThread = thread;
+                return thread;
+            }
+        });
+    }
+
+    public int getBusNumber() {
+        return busNumber;
+    }
+
+    /**
+     * @return identifies the bus, e.g. "i2c-1"
+     */
+    public String getId() {
+        return "i2c-" + busNumber;
+    }
+
+    /**
+     * @return the clock the drivers of the devices on this bus wait for conversions with
+     */
+    public Sleeper getSleeper() {
+        return sleeper;
+    }
+
+    /**
+     * Returns the handle for the device. The same handle is returned for the same address.
+     */
+    @Override
+    public ManagedI2CDevice getDevice(int address) throws IOException {
+        ManagedI2CDevice device = devices.get(address);
+        if (device == null) {
+            synchronized (devices) {
+                device = devices.get(address);
+                if (device == null) {
+                    device = new ManagedI2CDevice(this, address, execute(() -> bus.getDevice(address)));
+                    devices.put(address, device);
+                }
+            }
+        }
+        return device;
+    }
+
+    @Override
+    public String getFileName() {
+        return bus.getFileName();
+    }
+
+    @Override
+    public int getFileDescriptor() {
+        return bus.getFileDescriptor();
+    }
+
+    /**
+     * Stops the worker and closes the underlying bus.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            execute(() -> {
+                bus.close();
+                return null;
+            });
+        } finally {
+            worker.shutdown();
+        }
+    }
+
+    /**
+     * Runs the task on the bus worker and waits for its result. Tasks submitted from the
+     * worker itself run directly.
+     */
+    <T> T execute(Callable<T> task) throws IOException {
+        if (Thread.currentThread() == workerThread) {
+            return call(task);
+        }
+        Future<T> future = worker.submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for I2C bus " + busNumber);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private static <T> T call(Callable<T> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Executes the transaction on the bus worker.
+     *
+     * @param device      the device the transaction accesses
+     * @param transaction the register accesses
+     * @return the result of the transaction
+     * @throws IOException if the communication fails
+     */
+    <T> T execute(final I2CDevice device, final I2CTransaction<T> transaction) throws IOException {
+        return execute(() -> transaction.execute(device));
+    }
+}
@@ -0,0 +1,100 @@
+package de.patricksteinert.rpisensorlib.bus;
+
+import com.pi4j.io.i2c.I2CDevice;
+
+import java.io.IOException;
+
+/**
+ * Handle of a device on a {@link ManagedI2CBus}. Every access is executed by the worker of
+ * the bus; use {@link #transaction(I2CTransaction)} for accesses that must not be
+ * interleaved with other accesses, e.g. pointer register write followed by a data write.
+ */
+public class ManagedI2CDevice implements I2CDevice {
+
+    private final ManagedI2CBus bus;
+    private final int address;
+    private final I2CDevice device;
+
+    ManagedI2CDevice(ManagedI2CBus bus, int address, I2CDevice device) {
+        this.bus = bus;
+        this.address = address;
+        this.device = device;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    public ManagedI2CBus getBus() {
+        return bus;
+    }
+
+    /**
+     * Executes the register accesses atomically on the bus worker.
+     *
+     * @param transaction the register accesses
+     * @return the result of the transaction
+     * @throws IOException if the communication fails
+     */
+    public <T> T transaction(I2CTransaction<T> transaction) throws IOException {
+        return bus.execute(device, transaction);
+    }
+
+    @Override
+    public void write(final byte b) throws IOException {
+        bus.execute(() -> {
+            device.write(b);
+            return null;
+        });
+    }
+
+    @Override
+    public void write(final byte[] buffer, final int offset, final int size) throws IOException {
+        bus.execute(() -> {
+            device.write(buffer, offset, size);
+            return null;
+        });
+    }
+
+    @Override
+    public void write(final int address, final byte b) throws IOException {
+        bus.execute(() -> {
+            device.write(address, b);
+            return null;
+        });
+    }
+
+    @Override
+    public void write(final int address, final byte[] buffer, final int offset, final int size) throws IOException {
+        bus.execute(() -> {
+            device.write(address, buffer, offset, size);
+            return null;
+        });
+    }
+
+    @Override
+    public int read() throws IOException {
+        return bus.execute(() -> device.read());
+    }
+
+    @Override
+    public int read(final byte[] buffer, final int offset, final int size) throws IOException {
+        return bus.execute(() -> device.read(buffer, offset, size));
+    }
+
+    @Override
+    public int read(final int address) throws IOException {
+        return bus.execute(() -> device.read(address));
+    }
+
+    @Override
+    public int read(final int address, final byte[] buffer, final int offset, final int size) throws IOException {
+        return bus.execute(() -> device.read(address, buffer, offset, size));
+    }
+
+    @Override
+    public int read(final byte[] writeBuffer, final int writeOffset, final int writeSize,
+                    final byte[] readBuffer, final int readOffset, final int readSize) throws IOException {
+        return bus.execute(() -> device.read(writeBuffer, writeOffset, writeSize, readBuffer, readOffset, readSize));
+    }
+}
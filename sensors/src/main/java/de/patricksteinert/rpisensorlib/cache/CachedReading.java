@@ -0,0 +1,222 @@
+package de.patricksteinert.rpisensorlib.cache;
+
+import de.patricksteinert.rpisensorlib.Sleeper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches the result of a sensor read for a maximum age. Callers arriving while a read is in
+ * flight share its result instead of starting another conversion (single flight); a failed
+ * read is not cached, all callers waiting for it get the failure.
+ * <p>
+ * One cache per quantity, each with its own maximum age. Quantities from one measurement share
+ * a cache of the measurement:
+ * <pre>
+ * CachedReading&lt;AdafruitBMP280.Measurement&gt; bmp280Cache =
+ *         new CachedReading&lt;&gt;(bmp280::readTemperatureAndPressureAsync, 1000);
+ * CachedReading&lt;Double&gt; humidity = CachedReading.blocking(sht15::readHumidity, 5000);
+ *
+ * double pressure = bmp280Cache.get().getPressure();
+ * humidity.getAsync().thenAccept(...);
+ * </pre>
+ *
+ * @param <T> type of the value read
+ */
+public class CachedReading<T> {
+
+    private final Supplier<CompletableFuture<T>> loader;
+    private final long maxAgeNanos;
+    private final Sleeper sleeper;
+
+    // Guarded by this
+    private boolean valid;
+    private T value;
+    private long loadedNanos;
+    private CompletableFuture<T> inFlight;
+    private long hits;
+    private long misses;
+    private long coalesced;
+
+    /**
+     * @param loader       starts an asynchronous read, e.g. {@code bmp280::readPressureAsync}
+     * @param maxAgeMillis how long a value is served from the cache
+     */
+    public CachedReading(Supplier<CompletableFuture<T>> loader, long maxAgeMillis) {
+        this(loader, maxAgeMillis, Sleeper.SYSTEM);
+    }
+
+    /**
+     * @param loader       starts an asynchronous read
+     * @param maxAgeMillis how long a value is served from the cache
+     * @param sleeper      the clock the age is measured with, the one of the sensor's bus
+     */
+    public CachedReading(Supplier<CompletableFuture<T>> loader, long maxAgeMillis, Sleeper sleeper) {
+        if (maxAgeMillis < 0)
+            throw new IllegalArgumentException("Invalid max age: " + maxAgeMillis + " ms");
+        this.loader = loader;
+        this.maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(maxAgeMillis);
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * Caches a blocking read. The read runs in the thread of the caller that misses the cache,
+     * also when it calls {@link #getAsync()}.
+     *
+     * @param read         the read, e.g. {@code sht15::readHumidity}
+     * @param maxAgeMillis how long a value is served from the cache
+     * @return the cache
+     */
+    public static <T> CachedReading<T> blocking(Callable<T> read, long maxAgeMillis) {
+        return blocking(read, maxAgeMillis, Sleeper.SYSTEM);
+    }
+
+    /**
+     * Caches a blocking read, measuring the age with the given clock.
+     *
+     * @param read         the read
+     * @param maxAgeMillis how long a value is served from the cache
+     * @param sleeper      the clock of the sensor, e.g. {@code sht15Wire.getSleeper()}
+     * @return the cache
+     */
+    public static <T> CachedReading<T> blocking(final Callable<T> read, long maxAgeMillis, Sleeper sleeper) {
+        return new CachedReading<T>(() -> {
+            CompletableFuture<T> result = new CompletableFuture<T>();
+            try {
+                result.complete(read.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+            return result;
+        }, maxAgeMillis, sleeper);
+    }
+
+    /**
+     * Returns the cached value if it is recent enough, otherwise waits for the read in flight
+     * or starts one.
+     *
+     * @return the value
+     * @throws Exception the exception of the read
+     */
+    public T get() throws Exception {
+        CompletableFuture<T> result;
+        boolean load;
+        synchronized (this) {
+            if (isFresh()) {
+                hits++;
+                return value;
+            }
+            load = inFlight == null;
+            result = join();
+        }
+        if (load)
+            load(result);
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Like {@link #get()} without blocking the caller, unless the read itself is blocking.
+     *
+     * @return future completed with the value or the exception of the read
+     */
+    public CompletableFuture<T> getAsync() {
+        CompletableFuture<T> result;
+        boolean load;
+        synchronized (this) {
+            if (isFresh()) {
+                hits++;
+                return CompletableFuture.completedFuture(value);
+            }
+            load = inFlight == null;
+            result = join();
+        }
+        if (load)
+            load(result);
+        return result;
+    }
+
+    /**
+     * Drops the cached value, the next call reads the sensor.
+     */
+    public synchronized void invalidate() {
+        valid = false;
+        value = null;
+    }
+
+    private boolean isFresh() {
+        return valid && sleeper.nanoTime() - loadedNanos < maxAgeNanos;
+    }
+
+    /**
+     * Joins the read in flight or registers a new one, which the caller starts with
+     * {@link #load(CompletableFuture)} after leaving the monitor. Called holding the monitor.
+     */
+    private CompletableFuture<T> join() {
+        if (inFlight != null) {
+            coalesced++;
+            return inFlight;
+        }
+        misses++;
+        inFlight = new CompletableFuture<T>();
+        return inFlight;
+    }
+
+    /**
+     * Runs the loader for a registered read, without holding the monitor: callers arriving
+     * meanwhile join the read, a blocking loader does not block them on the monitor.
+     */
+    private void load(final CompletableFuture<T> pending) {
+        CompletableFuture<T> read;
+        try {
+            read = loader.get();
+        } catch (RuntimeException e) {
+            read = new CompletableFuture<T>();
+            read.completeExceptionally(e);
+        }
+        read.whenComplete((result, e) -> {
+            synchronized (CachedReading.this) {
+                if (e == null) {
+                    value = result;
+                    loadedNanos = sleeper.nanoTime();
+                    valid = true;
+                }
+                inFlight = null;
+            }
+            if (e == null)
+                pending.complete(result);
+            else
+                pending.completeExceptionally(e);
+        });
+    }
+
+    /**
+     * @return number of calls served from the cache
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return number of calls that started a read
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return number of calls that joined a read in flight
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+}
@@ -0,0 +1,75 @@
+package de.patricksteinert.rpisensorlib.replay;
+
+import de.patricksteinert.rpisensorlib.Sleeper;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Virtual clock of a replay. Its time starts at the given time and only moves
+ * forward when the replay advances to the next record or a driver or emulator sleeps.
+ * <p>
+ * At a finite speed the clock keeps pace with the real time, scaled by the speed: 1 replays in
+ * real time, 60 replays an hour per minute. At {@link #AS_FAST_AS_POSSIBLE} sleeps return at
+ * once, so conversion times and bus latency cost nothing.
+ * <p>
+ * The clock is meant to be advanced by one replay thread.
+ */
+public class ReplayClock extends Sleeper {
+
+    public static final double REAL_TIME = 1.0;
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    private final double speed;
+    private final long virtualStart;
+    private final long realStart;
+    private final AtomicLong now;
+
+    /**
+     * @param speed      replay speed, {@link #REAL_TIME} or faster
+     * @param startNanos virtual time to start at
+     */
+    public ReplayClock(double speed, long startNanos) {
+        if (!(speed > 0))
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        this.speed = speed;
+        this.virtualStart = startNanos;
+        this.realStart = System.nanoTime();
+        this.now = new AtomicLong(startNanos);
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now.get();
+    }
+
+    @Override
+    public void sleepNanos(long nanos) throws InterruptedException {
+        if (nanos > 0)
+            advance(nanos);
+    }
+
+    /**
+     * Advances the clock to the given time; does nothing if the clock is already past it.
+     *
+     * @param timestampNanos the virtual time
+     * @throws InterruptedException if the thread is interrupted while pacing the replay
+     */
+    public void advanceTo(long timestampNanos) throws InterruptedException {
+        long delta = timestampNanos - now.get();
+        if (delta > 0)
+            advance(delta);
+    }
+
+    private void advance(long nanos) throws InterruptedException {
+        long virtual = now.addAndGet(nanos);
+        if (speed == AS_FAST_AS_POSSIBLE)
+            return;
+        // Pace against the start, so the overshoot of the single sleeps does not add up
+        long deadline = realStart + (long) ((virtual - virtualStart) / speed);
+        Sleeper.SYSTEM.sleepNanos(deadline - System.nanoTime());
+    }
+}
@@ -0,0 +1,91 @@
+package de.patricksteinert.rpisensorlib.replay;
+
+import de.patricksteinert.rpisensorlib.store.SampleCursor;
+import de.patricksteinert.rpisensorlib.store.SampleStore;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Replays a recorded {@link SampleStore} through the drivers: the drivers run on emulators
+ * attached to a {@code SimulatedI2CBus} (or an {@code SHT15Emulator}), and for every record the
+ * {@link ReplayTarget} of its sensor loads the recorded raw values into the emulator and reads
+ * it through the driver, exactly the code path of a live read.
+ * <p>
+ * The engine has a {@link ReplayClock}; the simulated bus and emulators the drivers run on are
+ * created with it, so conversion times, polls and bus latency of the replayed drivers pass in
+ * virtual time while other drivers in the process keep the system clock. The virtual time
+ * starts at the system time when the engine is created, the recorded timestamps are shifted by
+ * a constant offset. At {@link ReplayClock#AS_FAST_AS_POSSIBLE} a day of 10 Hz samples replays
+ * in seconds. Reads must be blocking reads in the replay thread, asynchronous reads wait in
+ * real time. Drivers used in a replay stay on its clock, they are not meant to be used live
+ * afterwards.
+ * <pre>
+ * ReplayEngine engine = new ReplayEngine(store, ReplayClock.AS_FAST_AS_POSSIBLE);
+ * SimulatedI2CBus simulated = new SimulatedI2CBus(engine.getClock());
+ * ...
+ * engine.register(PRESSURE, record -&gt; ...);
+ * long records = engine.run();
+ * </pre>
+ */
+public class ReplayEngine {
+
+    private final SampleStore store;
+    private final Map<Integer, ReplayTarget> targets = new HashMap<Integer, ReplayTarget>();
+
+    private final ReplayClock clock;
+
+    /**
+     * @param store the recording
+     * @param speed replay speed, see {@link ReplayClock}
+     */
+    public ReplayEngine(SampleStore store, double speed) {
+        if (!(speed > 0))
+            throw new IllegalArgumentException("Invalid replay speed: " + speed);
+        this.store = store;
+        this.clock = new ReplayClock(speed, System.nanoTime());
+    }
+
+    /**
+     * Sets the target replaying the records of a sensor. Records of sensors without target
+     * are skipped.
+     *
+     * @return this engine
+     */
+    public ReplayEngine register(int sensorId, ReplayTarget target) {
+        targets.put(sensorId, target);
+        return this;
+    }
+
+    /**
+     * @return the virtual clock of the replay, for the simulated bus and the emulators
+     */
+    public ReplayClock getClock() {
+        return clock;
+    }
+
+    /**
+     * Replays all records of the store in the calling thread.
+     *
+     * @return number of records replayed
+     * @throws Exception the exception of a target, which ends the replay
+     */
+    public long run() throws Exception {
+        SampleCursor cursor = store.newCursor();
+        if (!cursor.next())
+            return 0;
+
+        // Continue from the virtual time the devices were set up at, shifting the recording
+        long offset = clock.nanoTime() - cursor.getTimestampNanos();
+        long replayed = 0;
+        do {
+            ReplayTarget target = targets.get(cursor.getSensorId());
+            if (target == null)
+                continue;
+            clock.advanceTo(cursor.getTimestampNanos() + offset);
+            target.replay(cursor);
+            replayed++;
+        } while (cursor.next());
+        return replayed;
+    }
+}
@@ -0,0 +1,25 @@
+package de.patricksteinert.rpisensorlib.replay;
+
+import de.patricksteinert.rpisensorlib.store.SampleCursor;
+
+/**
+ * Replays the records of one sensor: loads the recorded raw values into the emulated device
+ * and reads it through its driver.
+ * <pre>
+ * engine.register(PRESSURE, record -&gt; {
+ *     bmp280Emulator.setRawPressure(record.getRaw1());
+ *     bmp280Emulator.setRawTemperature(record.getRaw2());
+ *     filter.add(record.getTimestampNanos(), bmp280.readPressure());
+ * });
+ * </pre>
+ */
+public interface ReplayTarget {
+
+    /**
+     * Called with the virtual clock advanced to the (shifted) timestamp of the record.
+     *
+     * @param record the record, only valid during the call
+     * @throws Exception if the driver fails; it ends the replay
+     */
+    void replay(SampleCursor record) throws Exception;
+}
@@ -0,0 +1,126 @@
+package de.patricksteinert.rpisensorlib.scheduler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread serving the sensors of one bus. The sensors are kept in a queue ordered by the time
+ * of their next trigger or collect; the thread sleeps until the first one is due.
+ */
+final class BusWorker implements Runnable {
+
+    private final String busId;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final PriorityQueue<ScheduledSensor> queue = new PriorityQueue<ScheduledSensor>(11,
+            new Comparator<ScheduledSensor>() {
+                @Override
+                public int compare(ScheduledSensor a, ScheduledSensor b) {
+                    return Long.signum(a.getDueNanos() - b.getDueNanos());
+                }
+            });
+    private boolean running;
+    private Thread thread;
+
+    BusWorker(String busId) {
+        this.busId = busId;
+    }
+
+    void add(ScheduledSensor sensor) {
+        lock.lock();
+        try {
+            sensor.reset(System.nanoTime());
+            queue.add(sensor);
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void cancel(ScheduledSensor sensor) {
+        lock.lock();
+        try {
+            // A sensor that is not queued is being served and dropped by the thread afterwards
+            if (queue.remove(sensor))
+                sensor.abort();
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void start() {
+        lock.lock();
+        try {
+            // Start sampling now, otherwise the time since registration counts as overrun
+            long now = System.nanoTime();
+            List<ScheduledSensor> sensors = new ArrayList<ScheduledSensor>(queue);
+            queue.clear();
+            for (ScheduledSensor sensor : sensors) {
+                sensor.reset(now);
+                queue.add(sensor);
+            }
+            running = true;
+            thread = new Thread(this, "sensor-scheduler-" + busId);
+            thread.setDaemon(true);
+            thread.start();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void stop() {
+        lock.lock();
+        try {
+            running = false;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void join() throws InterruptedException {
+        thread.join();
+    }
+
+    @Override
+    public void run() {
+        lock.lock();
+        try {
+            while (running) {
+                ScheduledSensor next = queue.peek();
+                if (next == null) {
+                    changed.await();
+                    continue;
+                }
+                long now = System.nanoTime();
+                long wait = next.getDueNanos() - now;
+                if (wait > 0) {
+                    changed.awaitNanos(wait);
+                    continue;
+                }
+                queue.poll();
+                lock.unlock();
+                try {
+                    next.step(now);
+                } finally {
+                    lock.lock();
+                }
+                if (next.isCancelled())
+                    next.abort();
+                else
+                    queue.add(next);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (ScheduledSensor sensor : queue)
+                sensor.abort();
+            lock.unlock();
+        }
+    }
+}
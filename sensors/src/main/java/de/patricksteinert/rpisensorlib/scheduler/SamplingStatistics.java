@@ -0,0 +1,88 @@
+package de.patricksteinert.rpisensorlib.scheduler;
+
+/**
+ * Snapshot of how well a {@link ScheduledSensor} keeps to its sample rate.
+ * <p>
+ * Lateness is the time between the scheduled start of a sample and the actual trigger of the
+ * conversion, e.g. because the bus thread was busy with another device. The jitter is the
+ * standard deviation of the lateness.
+ */
+public final class SamplingStatistics {
+
+    private final String name;
+    private final double targetRateHz;
+    private final long sampleCount;
+    private final double achievedRateHz;
+    private final double meanLatenessMicros;
+    private final double maxLatenessMicros;
+    private final double jitterMicros;
+    private final long overruns;
+    private final long errors;
+
+    SamplingStatistics(String name, double targetRateHz, long sampleCount, double achievedRateHz,
+                       double meanLatenessMicros, double maxLatenessMicros, double jitterMicros,
+                       long overruns, long errors) {
+        this.name = name;
+        this.targetRateHz = targetRateHz;
+        this.sampleCount = sampleCount;
+        this.achievedRateHz = achievedRateHz;
+        this.meanLatenessMicros = meanLatenessMicros;
+        this.maxLatenessMicros = maxLatenessMicros;
+        this.jitterMicros = jitterMicros;
+        this.overruns = overruns;
+        this.errors = errors;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getTargetRateHz() {
+        return targetRateHz;
+    }
+
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * @return samples per second between the first and the last sample, 0 before the second sample
+     */
+    public double getAchievedRateHz() {
+        return achievedRateHz;
+    }
+
+    public double getMeanLatenessMicros() {
+        return meanLatenessMicros;
+    }
+
+    public double getMaxLatenessMicros() {
+        return maxLatenessMicros;
+    }
+
+    public double getJitterMicros() {
+        return jitterMicros;
+    }
+
+    /**
+     * @return number of samples skipped because a read took longer than its period
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * @return number of reads that failed
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d samples, %.2f/%.2f Hz, lateness mean %.1f us max %.1f us, jitter %.1f us, "
+                        + "%d overruns, %d errors",
+                name, sampleCount, achievedRateHz, targetRateHz, meanLatenessMicros, maxLatenessMicros,
+                jitterMicros, overruns, errors);
+    }
+}
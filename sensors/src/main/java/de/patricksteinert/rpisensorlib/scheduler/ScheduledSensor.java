@@ -0,0 +1,199 @@
+package de.patricksteinert.rpisensorlib.scheduler;
+
+import de.patricksteinert.rpisensorlib.PhasedRead;
+import de.patricksteinert.rpisensorlib.SampleListener;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A sensor registered with the {@link SensorScheduler}.
+ * <p>
+ * Samples are due at fixed periods from the start. When a read takes longer than a
+ * period the missed samples are skipped and counted as overruns, so a slow read does not
+ * shift the schedule of the sensor.
+ */
+public final class ScheduledSensor {
+
+    /**
+     * Time to wait before trying again when the device is used by another read.
+     */
+    private static final long GATE_RETRY_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final String name;
+    private final PhasedRead read;
+    private final double rateHz;
+    private final long periodNanos;
+    private final SampleListener listener;
+    private final BusWorker worker;
+    private volatile boolean cancelled;
+
+    // State of the read, used by the bus thread only
+    private boolean converting;
+    private long sampleNanos;
+    private long dueNanos;
+
+    // Statistics, guarded by this
+    private long samples;
+    private long firstSampleNanos;
+    private long lastSampleNanos;
+    private long triggers;
+    private double latenessMean;
+    private double latenessM2;
+    private long latenessMax;
+    private long overruns;
+    private long errors;
+
+    ScheduledSensor(String name, PhasedRead read, double rateHz, SampleListener listener, BusWorker worker) {
+        this.name = name;
+        this.read = read;
+        this.rateHz = rateHz;
+        this.periodNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rateHz));
+        this.listener = listener;
+        this.worker = worker;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getTargetRateHz() {
+        return rateHz;
+    }
+
+    /**
+     * Stops sampling the sensor. A read in progress is abandoned.
+     */
+    public void cancel() {
+        cancelled = true;
+        worker.cancel(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return snapshot of how well the sensor keeps to its rate
+     */
+    public synchronized SamplingStatistics getStatistics() {
+        double achievedRate = 0;
+        if (samples > 1)
+            achievedRate = (samples - 1) * (double) TimeUnit.SECONDS.toNanos(1) / (lastSampleNanos - firstSampleNanos);
+        double jitter = triggers > 1 ? Math.sqrt(latenessM2 / (triggers - 1)) : 0;
+        return new SamplingStatistics(name, rateHz, samples, achievedRate,
+                latenessMean / 1000.0, latenessMax / 1000.0, jitter / 1000.0, overruns, errors);
+    }
+
+    long getDueNanos() {
+        return dueNanos;
+    }
+
+    void reset(long now) {
+        sampleNanos = now;
+        dueNanos = now;
+    }
+
+    /**
+     * Triggers or collects the read; called by the bus thread when the sensor is due.
+     */
+    void step(long now) {
+        if (!converting)
+            trigger(now);
+        else
+            collect(now);
+    }
+
+    /**
+     * Releases the device if a read is in progress.
+     */
+    void abort() {
+        if (converting) {
+            converting = false;
+            read.getGate().release();
+        }
+    }
+
+    private void trigger(long now) {
+        if (!read.getGate().tryAcquire()) {
+            dueNanos = now + GATE_RETRY_NANOS;
+            return;
+        }
+        converting = true;
+        recordLateness(now - sampleNanos);
+        long delay;
+        try {
+            delay = read.trigger();
+        } catch (IOException | RuntimeException e) {
+            failed(now);
+            return;
+        }
+        proceed(now, delay);
+    }
+
+    private void collect(long now) {
+        long delay;
+        try {
+            delay = read.collect();
+        } catch (IOException | RuntimeException e) {
+            failed(now);
+            return;
+        }
+        proceed(now, delay);
+    }
+
+    private void proceed(long now, long delay) {
+        if (delay != PhasedRead.COMPLETE) {
+            dueNanos = now + Math.max(0, delay);
+            return;
+        }
+        converting = false;
+        read.getGate().release();
+        long timestamp = System.nanoTime();
+        recordSample(timestamp);
+        try {
+            listener.onSample(timestamp, read.getValue());
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        scheduleNext(timestamp);
+    }
+
+    private void failed(long now) {
+        converting = false;
+        read.getGate().release();
+        synchronized (this) {
+            errors++;
+        }
+        scheduleNext(now);
+    }
+
+    private void scheduleNext(long now) {
+        sampleNanos += periodNanos;
+        if (sampleNanos - now < 0) {
+            long missed = (now - sampleNanos) / periodNanos + 1;
+            sampleNanos += missed * periodNanos;
+            synchronized (this) {
+                overruns += missed;
+            }
+        }
+        dueNanos = sampleNanos;
+    }
+
+    private synchronized void recordLateness(long lateness) {
+        // Welford's running mean and variance
+        triggers++;
+        double delta = lateness - latenessMean;
+        latenessMean += delta / triggers;
+        latenessM2 += delta * (lateness - latenessMean);
+        if (lateness > latenessMax)
+            latenessMax = lateness;
+    }
+
+    private synchronized void recordSample(long timestamp) {
+        if (samples == 0)
+            firstSampleNanos = timestamp;
+        lastSampleNanos = timestamp;
+        samples++;
+    }
+}
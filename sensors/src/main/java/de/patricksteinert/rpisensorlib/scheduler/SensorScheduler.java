@@ -0,0 +1,79 @@
+package de.patricksteinert.rpisensorlib.scheduler;
+
+import de.patricksteinert.rpisensorlib.PhasedRead;
+import de.patricksteinert.rpisensorlib.SampleListener;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Samples many sensors at their own rates with one thread per bus. Every read is split into
+ * a trigger and a collect phase ({@link PhasedRead}); while one device converts the thread of
+ * its bus triggers or collects the other devices on that bus instead of sleeping.
+ * <pre>
+ * SensorScheduler scheduler = new SensorScheduler();
+ * ScheduledSensor pressure = scheduler.schedule("pressure", bmp280.pressureRead(), 10.0, listener);
+ * scheduler.schedule("light", tsl45315.valueRead(), 2.0, listener);
+ * scheduler.start();
+ * ...
+ * System.out.println(pressure.getStatistics());
+ * scheduler.stop();
+ * </pre>
+ */
+public class SensorScheduler {
+
+    private final Map<String, BusWorker> workers = new HashMap<String, BusWorker>();
+    private boolean running;
+
+    /**
+     * Registers a sensor. Sensors registered while the scheduler runs start sampling
+     * immediately.
+     *
+     * @param name     name of the sensor, used in the statistics
+     * @param read     the read to execute
+     * @param rateHz   target sample rate
+     * @param listener receives the samples; called on the thread of the bus, so it must not block
+     * @return handle to query the statistics and to cancel the sampling
+     */
+    public synchronized ScheduledSensor schedule(String name, PhasedRead read, double rateHz, SampleListener listener) {
+        if (rateHz <= 0 || Double.isNaN(rateHz) || Double.isInfinite(rateHz))
+            throw new IllegalArgumentException("Invalid sample rate: " + rateHz);
+        String busId = read.getBusId();
+        BusWorker worker = workers.get(busId);
+        if (worker == null) {
+            worker = new BusWorker(busId);
+            workers.put(busId, worker);
+            if (running)
+                worker.start();
+        }
+        ScheduledSensor sensor = new ScheduledSensor(name, read, rateHz, listener, worker);
+        worker.add(sensor);
+        return sensor;
+    }
+
+    /**
+     * Starts sampling all registered sensors.
+     */
+    public synchronized void start() {
+        if (running)
+            return;
+        running = true;
+        for (BusWorker worker : workers.values())
+            worker.start();
+    }
+
+    /**
+     * Stops sampling and waits for the bus threads to finish. Reads in progress are
+     * abandoned and their devices released. The sensors stay registered, so the scheduler
+     * can be started again.
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (!running)
+            return;
+        running = false;
+        for (BusWorker worker : workers.values())
+            worker.stop();
+        for (BusWorker worker : workers.values())
+            worker.join();
+    }
+}
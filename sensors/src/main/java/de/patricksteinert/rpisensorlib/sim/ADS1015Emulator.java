@@ -0,0 +1,235 @@
+package de.patricksteinert.rpisensorlib.sim;
+
+import de.patricksteinert.rpisensorlib.AlertReadyPin;
+
+/**
+ * Emulates an ADS1015: the 16 bit conversion, config and threshold registers addressed
+ * through the pointer register, single-shot and continuous conversions with the conversion
+ * time of the configured data rate, the input multiplexer and the gain amplifier.
+ * Of the comparator only the conversion ready mode of the ALERT/RDY pin is modelled.
+ */
+public class ADS1015Emulator extends SimulatedI2CDevice {
+
+    public static final int ADDRESS = 0x48;
+
+    private static final int POINTER_CONVERSION = 0;
+    private static final int POINTER_CONFIG = 1;
+    private static final int POINTER_LO_THRESH = 2;
+    private static final int POINTER_HI_THRESH = 3;
+
+    private static final int CONFIG_OS = 0x8000;
+    private static final int CONFIG_MODE_SINGLE = 0x0100;
+    private static final int CONFIG_COMP_QUE_DISABLE = 0x0003;
+    private static final int DEFAULT_CONFIG = 0x8583;
+
+    private static final int[] DATA_RATE_SPS = {128, 250, 490, 920, 1600, 2400, 3300, 3300};
+    private static final double[] FULL_SCALE_VOLTS = {6.144, 4.096, 2.048, 1.024, 0.512, 0.256, 0.256, 0.256};
+    private static final long WAKE_UP_NANOS = 25000;
+
+    private final int[] register16 = new int[4];
+    private final double[] inputVolts = new double[4];
+    private int pointer;
+
+    private boolean converting;
+    private long readyNanos;
+    private long continuousStartNanos;
+    private long continuousCount;
+
+    private final AlertReadyPin alertReadyPin = new AlertPin();
+    private long readyEdges;
+    private long conversionReads;
+
+    public ADS1015Emulator() {
+        this(ADDRESS);
+    }
+
+    public ADS1015Emulator(int address) {
+        super(address);
+        register16[POINTER_CONFIG] = DEFAULT_CONFIG;
+        register16[POINTER_LO_THRESH] = 0x8000;
+        register16[POINTER_HI_THRESH] = 0x7FFF;
+    }
+
+    /**
+     * @param channel input AIN0..AIN3
+     * @param volts   voltage of the input against ground
+     */
+    public synchronized void setInputVoltage(int channel, double volts) {
+        inputVolts[channel] = volts;
+    }
+
+    /**
+     * @return the ALERT/RDY pin, its edges come with the conversions once the comparator is
+     * in conversion ready mode
+     */
+    public AlertReadyPin getAlertReadyPin() {
+        return alertReadyPin;
+    }
+
+    /**
+     * @return number of reads of the conversion register
+     */
+    public synchronized long getConversionReads() {
+        return conversionReads;
+    }
+
+    /**
+     * The first byte selects the register, two further bytes are written to it.
+     */
+    @Override
+    protected synchronized void write(byte[] data, int offset, int size) {
+        if (size == 0)
+            return;
+        update();
+        pointer = data[offset] & 0x03;
+        if (size < 3)
+            return;
+        int value = ((data[offset + 1] & 0xFF) << 8) | (data[offset + 2] & 0xFF);
+        switch (pointer) {
+            case POINTER_CONFIG:
+                writeConfig(value);
+                break;
+            case POINTER_LO_THRESH:
+            case POINTER_HI_THRESH:
+                register16[pointer] = value;
+                break;
+            default:
+                // The conversion register is read only
+        }
+    }
+
+    /**
+     * Reads the register selected last, most significant byte first.
+     */
+    @Override
+    protected synchronized void read(byte[] buffer, int offset, int size) {
+        update();
+        int value = register16[pointer];
+        if (pointer == POINTER_CONVERSION)
+            conversionReads++;
+        if (pointer == POINTER_CONFIG && converting)
+            value &= ~CONFIG_OS;
+        for (int i = 0; i < size; i++)
+            buffer[offset + i] = (byte) (i % 2 == 0 ? value >> 8 : value);
+    }
+
+    private void writeConfig(int value) {
+        register16[POINTER_CONFIG] = value | CONFIG_OS;
+        long now = now();
+        if ((value & CONFIG_MODE_SINGLE) != 0) {
+            if ((value & CONFIG_OS) != 0) {
+                converting = true;
+                readyNanos = now + WAKE_UP_NANOS + conversionNanos();
+            }
+        } else {
+            converting = false;
+            continuousStartNanos = now;
+            continuousCount = 0;
+        }
+    }
+
+    private long conversionNanos() {
+        return 1000000000L / DATA_RATE_SPS[(register16[POINTER_CONFIG] >> 5) & 0x07];
+    }
+
+    private void update() {
+        int config = register16[POINTER_CONFIG];
+        long now = now();
+        if ((config & CONFIG_MODE_SINGLE) != 0) {
+            if (converting && now - readyNanos >= 0) {
+                converting = false;
+                register16[POINTER_CONVERSION] = convert(config);
+                if (isConversionReadyMode())
+                    readyEdges++;
+            }
+        } else {
+            long count = (now - continuousStartNanos) / conversionNanos();
+            if (count != continuousCount) {
+                if (isConversionReadyMode())
+                    readyEdges += count - continuousCount;
+                continuousCount = count;
+                register16[POINTER_CONVERSION] = convert(config);
+            }
+        }
+    }
+
+    /**
+     * Conversion ready mode: the most significant bit of the high threshold set, the one of
+     * the low threshold clear and the comparator enabled.
+     */
+    private boolean isConversionReadyMode() {
+        return (register16[POINTER_HI_THRESH] & 0x8000) != 0 && (register16[POINTER_LO_THRESH] & 0x8000) == 0
+                && (register16[POINTER_CONFIG] & CONFIG_COMP_QUE_DISABLE) != CONFIG_COMP_QUE_DISABLE;
+    }
+
+    /**
+     * @return time of the next conversion ready edge, or -1 if no conversion is running
+     */
+    private long nextEdgeNanos() {
+        if (!isConversionReadyMode())
+            return -1;
+        if ((register16[POINTER_CONFIG] & CONFIG_MODE_SINGLE) != 0)
+            return converting ? readyNanos : -1;
+        return continuousStartNanos + (continuousCount + 1) * conversionNanos();
+    }
+
+    /**
+     * @return the 12 bit result, left aligned in the 16 bit conversion register
+     */
+    private int convert(int config) {
+        double volts;
+        int mux = (config >> 12) & 0x07;
+        switch (mux) {
+            case 0:
+                volts = inputVolts[0] - inputVolts[1];
+                break;
+            case 1:
+                volts = inputVolts[0] - inputVolts[3];
+                break;
+            case 2:
+                volts = inputVolts[1] - inputVolts[3];
+                break;
+            case 3:
+                volts = inputVolts[2] - inputVolts[3];
+                break;
+            default:
+                volts = inputVolts[mux - 4];
+        }
+        double fullScale = FULL_SCALE_VOLTS[(config >> 9) & 0x07];
+        long code = Math.round(volts / fullScale * 2048);
+        code = Math.max(-2048, Math.min(2047, code));
+        return ((int) code << 4) & 0xFFFF;
+    }
+
+    /**
+     * Sleeps until the conversion the pin signals completes, like an edge event would.
+     */
+    private final class AlertPin implements AlertReadyPin {
+
+        @Override
+        public long getEdgeCount() {
+            synchronized (ADS1015Emulator.this) {
+                update();
+                return readyEdges;
+            }
+        }
+
+        @Override
+        public long awaitEdge(long edgeCount, long timeoutNanos) throws InterruptedException {
+            long deadline = now() + timeoutNanos;
+            while (true) {
+                long next;
+                synchronized (ADS1015Emulator.this) {
+                    update();
+                    if (readyEdges != edgeCount)
+                        return readyEdges;
+                    next = nextEdgeNanos();
+                }
+                long remaining = deadline - now();
+                if (remaining <= 0)
+                    return edgeCount;
+                getSleeper().sleepNanos(next < 0 ? remaining : Math.min(Math.max(next - now(), 0), remaining));
+            }
+        }
+    }
+}
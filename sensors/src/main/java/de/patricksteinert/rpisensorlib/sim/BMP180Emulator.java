@@ -0,0 +1,190 @@
+package de.patricksteinert.rpisensorlib.sim;
+
+import de.patricksteinert.rpisensorlib.AdafruitBMP180;
+import de.patricksteinert.rpisensorlib.BMP180Calibration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emulates a BMP180: calibration block, chip id, conversions started through the control
+ * register with the conversion times of the datasheet, and the data registers.
+ * <p>
+ * The raw values are derived from the temperature and pressure set on the emulator by
+ * inverting the compensation of the datasheet, so a driver reads back the values set.
+ */
+public class BMP180Emulator extends SimulatedI2CDevice {
+
+    private static final int CHIP_ID_REGISTER = 0xD0;
+    private static final int CHIP_ID = 0x55;
+    private static final int SOFT_RESET_REGISTER = 0xE0;
+
+    // Maximum conversion times of the datasheet
+    private static final long TEMPERATURE_CONVERSION_MICROS = 4500;
+    private static final long[] PRESSURE_CONVERSION_MICROS = {4500, 7500, 13500, 25500};
+
+    // Smaller than the raw value range between any pressure in the measurement range and the overflow
+    private static final int PRESSURE_SEARCH_STEP = 1024;
+
+    private final BMP180Calibration calibration;
+    private double temperature = 15.0;
+    private double pressure = 101325;
+    // Raw values set directly, -1 to derive them from temperature and pressure
+    private int rawTemperatureSet = -1;
+    private int rawPressureSet = -1;
+
+    private boolean converting;
+    private int pendingCommand;
+    private long readyNanos;
+
+    public BMP180Emulator() {
+        this(AdafruitBMP180.BMP180_ADDRESS, BMP180Calibration.DATASHEET_EXAMPLE);
+    }
+
+    public BMP180Emulator(int address, BMP180Calibration calibration) {
+        super(address);
+        this.calibration = calibration;
+        int r = BMP180Calibration.REGISTER_START;
+        setBigEndian16(r, calibration.getAC1());
+        setBigEndian16(r + 2, calibration.getAC2());
+        setBigEndian16(r + 4, calibration.getAC3());
+        setBigEndian16(r + 6, calibration.getAC4());
+        setBigEndian16(r + 8, calibration.getAC5());
+        setBigEndian16(r + 10, calibration.getAC6());
+        setBigEndian16(r + 12, calibration.getB1());
+        setBigEndian16(r + 14, calibration.getB2());
+        setBigEndian16(r + 16, calibration.getMB());
+        setBigEndian16(r + 18, calibration.getMC());
+        setBigEndian16(r + 20, calibration.getMD());
+        registers[CHIP_ID_REGISTER] = (byte) CHIP_ID;
+    }
+
+    /**
+     * @param temperature temperature in Celsius measured by the following conversions
+     */
+    public synchronized void setTemperature(double temperature) {
+        this.temperature = temperature;
+        this.rawTemperatureSet = -1;
+    }
+
+    /**
+     * @param pressure pressure in Pa measured by the following conversions
+     */
+    public synchronized void setPressure(double pressure) {
+        this.pressure = pressure;
+        this.rawPressureSet = -1;
+    }
+
+    /**
+     * Sets the raw temperature the following conversions deliver, e.g. from a recording.
+     *
+     * @param rawTemperature the raw value as read by the driver
+     */
+    public synchronized void setRawTemperature(int rawTemperature) {
+        this.rawTemperatureSet = rawTemperature;
+    }
+
+    /**
+     * Sets the raw pressure the following conversions deliver, e.g. from a recording.
+     *
+     * @param rawPressure the raw value as read by the driver
+     */
+    public synchronized void setRawPressure(int rawPressure) {
+        this.rawPressureSet = rawPressure;
+    }
+
+    @Override
+    protected int readRegister(int register) {
+        completeConversion();
+        return super.readRegister(register);
+    }
+
+    @Override
+    protected void writeRegister(int register, int value) {
+        completeConversion();
+        if (register == AdafruitBMP180.BMP180_CONTROL) {
+            startConversion(value);
+        } else if (register == SOFT_RESET_REGISTER && value == 0xB6) {
+            converting = false;
+            registers[AdafruitBMP180.BMP180_CONTROL] = 0;
+        }
+        // All other registers are read only
+    }
+
+    private void startConversion(int command) {
+        long micros;
+        if (command == AdafruitBMP180.BMP180_READTEMPCMD) {
+            micros = TEMPERATURE_CONVERSION_MICROS;
+        } else if ((command & 0x3F) == AdafruitBMP180.BMP180_READPRESSURECMD) {
+            micros = PRESSURE_CONVERSION_MICROS[command >> 6];
+        } else {
+            registers[AdafruitBMP180.BMP180_CONTROL] = (byte) command;
+            return;
+        }
+        registers[AdafruitBMP180.BMP180_CONTROL] = (byte) (command | AdafruitBMP180.BMP180_CONTROL_SCO);
+        converting = true;
+        pendingCommand = command;
+        readyNanos = now() + TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    private void completeConversion() {
+        if (!converting || now() - readyNanos < 0)
+            return;
+        converting = false;
+        // The start of conversion bit is part of the commands, it is cleared when done
+        registers[AdafruitBMP180.BMP180_CONTROL] = (byte) (pendingCommand & ~AdafruitBMP180.BMP180_CONTROL_SCO);
+        int data = AdafruitBMP180.BMP180_TEMPDATA;
+        if (pendingCommand == AdafruitBMP180.BMP180_READTEMPCMD) {
+            setBigEndian16(data, rawTemperature());
+        } else {
+            int mode = pendingCommand >> 6;
+            int raw = rawPressure(mode) << (8 - mode);
+            registers[data] = (byte) (raw >> 16);
+            registers[data + 1] = (byte) (raw >> 8);
+            registers[data + 2] = (byte) raw;
+        }
+    }
+
+    /**
+     * Smallest raw temperature compensated to at least the temperature set.
+     */
+    private int rawTemperature() {
+        if (rawTemperatureSet >= 0)
+            return rawTemperatureSet;
+        int low = 0;
+        int high = 0xFFFF;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (BMP180Calibration.temperatureFromB5(calibration.computeB5(middle)) < temperature)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Smallest raw pressure compensated to at least the pressure set.
+     * <p>
+     * The integer compensation overflows for raw values far above the measurement range, so
+     * the search first steps up from 0 to the first raw value reaching the pressure and then
+     * bisects the last step.
+     */
+    private int rawPressure(int mode) {
+        if (rawPressureSet >= 0)
+            return rawPressureSet;
+        int b5 = calibration.computeB5(rawTemperature());
+        int max = (1 << (16 + mode)) - 1;
+        int high = 0;
+        while (high < max && calibration.compensatePressure(high, b5, mode) < pressure)
+            high = Math.min(max, high + PRESSURE_SEARCH_STEP);
+        int low = Math.max(0, high - PRESSURE_SEARCH_STEP);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (calibration.compensatePressure(middle, b5, mode) < pressure)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
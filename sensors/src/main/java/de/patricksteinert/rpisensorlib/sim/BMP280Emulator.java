@@ -0,0 +1,240 @@
+package de.patricksteinert.rpisensorlib.sim;
+
+import de.patricksteinert.rpisensorlib.AdafruitBMP280;
+import de.patricksteinert.rpisensorlib.BMP280Calibration;
+
+/**
+ * Emulates a BMP280: calibration block, chip id, forced and normal mode with the typical
+ * measurement times of the datasheet, the measuring bit of the status register and the
+ * data registers. The IIR filter is not modelled.
+ * <p>
+ * The raw values are derived from the temperature and pressure set on the emulator by
+ * inverting the compensation of the datasheet, so a driver reads back the values set.
+ */
+public class BMP280Emulator extends SimulatedI2CDevice {
+
+    /**
+     * Calibration of the compensation example in the datasheet.
+     */
+    public static final BMP280Calibration DATASHEET_EXAMPLE = new BMP280Calibration(
+            27504, 26435, -1000, 36477, -10685, 3024, 2855, 140, -7, 15500, -14600, 6000);
+
+    private static final int CHIP_ID_REGISTER = 0xD0;
+    private static final int CHIP_ID = 0x58;
+    private static final int RESET_REGISTER = 0xE0;
+    private static final int STATUS_REGISTER = 0xF3;
+    private static final int CONTROL_REGISTER = 0xF4;
+    private static final int CONFIG_REGISTER = 0xF5;
+    private static final int DATA_REGISTER = 0xF7;
+    private static final int STATUS_MEASURING = 0x08;
+
+    private static final int[] OVERSAMPLING = {0, 1, 2, 4, 8, 16, 16, 16};
+    private static final long[] STANDBY_MICROS = {500, 62500, 125000, 250000, 500000, 1000000, 2000000, 4000000};
+    private static final int SKIPPED = 0x80000;
+
+    private final BMP280Calibration calibration;
+    private double temperature = 15.0;
+    private double pressure = 101325;
+    // Raw values set directly, -1 to derive them from temperature and pressure
+    private int rawTemperatureSet = -1;
+    private int rawPressureSet = -1;
+
+    // Forced mode: end of the measurement in progress
+    private boolean measuring;
+    private long readyNanos;
+    // Normal mode: start of the first measurement
+    private boolean normalMode;
+    private long normalStartNanos;
+    private long resultCount;
+
+    public BMP280Emulator() {
+        this(AdafruitBMP280.BMP280_ADDRESS, DATASHEET_EXAMPLE);
+    }
+
+    public BMP280Emulator(int address, BMP280Calibration calibration) {
+        super(address);
+        this.calibration = calibration;
+        int r = BMP280Calibration.REGISTER_START;
+        setLittleEndian16(r, calibration.getT1());
+        setLittleEndian16(r + 2, calibration.getT2());
+        setLittleEndian16(r + 4, calibration.getT3());
+        setLittleEndian16(r + 6, calibration.getP1());
+        setLittleEndian16(r + 8, calibration.getP2());
+        setLittleEndian16(r + 10, calibration.getP3());
+        setLittleEndian16(r + 12, calibration.getP4());
+        setLittleEndian16(r + 14, calibration.getP5());
+        setLittleEndian16(r + 16, calibration.getP6());
+        setLittleEndian16(r + 18, calibration.getP7());
+        setLittleEndian16(r + 20, calibration.getP8());
+        setLittleEndian16(r + 22, calibration.getP9());
+        registers[CHIP_ID_REGISTER] = (byte) CHIP_ID;
+        reset();
+    }
+
+    /**
+     * @param temperature temperature in Celsius measured by the following measurements
+     */
+    public synchronized void setTemperature(double temperature) {
+        this.temperature = temperature;
+        this.rawTemperatureSet = -1;
+    }
+
+    /**
+     * @param pressure pressure in Pa measured by the following measurements
+     */
+    public synchronized void setPressure(double pressure) {
+        this.pressure = pressure;
+        this.rawPressureSet = -1;
+    }
+
+    /**
+     * Sets the raw temperature the following measurements deliver, e.g. from a recording.
+     *
+     * @param rawTemperature the raw value as read by the driver
+     */
+    public synchronized void setRawTemperature(int rawTemperature) {
+        this.rawTemperatureSet = rawTemperature;
+    }
+
+    /**
+     * Sets the raw pressure the following measurements deliver, e.g. from a recording.
+     *
+     * @param rawPressure the raw value as read by the driver
+     */
+    public synchronized void setRawPressure(int rawPressure) {
+        this.rawPressureSet = rawPressure;
+    }
+
+    private void reset() {
+        measuring = false;
+        normalMode = false;
+        registers[CONTROL_REGISTER] = 0;
+        registers[CONFIG_REGISTER] = 0;
+        registers[STATUS_REGISTER] = 0;
+        // Reset values of the data registers
+        setData(SKIPPED, SKIPPED);
+    }
+
+    @Override
+    protected int readRegister(int register) {
+        update();
+        return super.readRegister(register);
+    }
+
+    @Override
+    protected void writeRegister(int register, int value) {
+        update();
+        if (register == CONTROL_REGISTER) {
+            registers[CONTROL_REGISTER] = (byte) value;
+            int mode = value & 0x03;
+            measuring = false;
+            normalMode = false;
+            if (mode == 1 || mode == 2) {
+                measuring = true;
+                readyNanos = now() + measurementNanos();
+            } else if (mode == 3) {
+                normalMode = true;
+                normalStartNanos = now();
+                resultCount = 0;
+            }
+        } else if (register == CONFIG_REGISTER) {
+            registers[CONFIG_REGISTER] = (byte) value;
+        } else if (register == RESET_REGISTER && value == 0xB6) {
+            reset();
+        }
+        // All other registers are read only
+    }
+
+    /**
+     * Typical measurement time: 1 ms + 2 ms * osrs_t + (2 ms * osrs_p + 0.5 ms).
+     */
+    private long measurementNanos() {
+        int control = registers[CONTROL_REGISTER] & 0xFF;
+        int t = OVERSAMPLING[control >> 5];
+        int p = OVERSAMPLING[(control >> 2) & 0x07];
+        long micros = 1000 + 2000L * t;
+        if (p > 0)
+            micros += 2000L * p + 500;
+        return micros * 1000;
+    }
+
+    private void update() {
+        long now = now();
+        int status = 0;
+        if (measuring) {
+            if (now - readyNanos >= 0) {
+                measuring = false;
+                // Back to sleep mode after a forced measurement
+                registers[CONTROL_REGISTER] &= ~0x03;
+                measure();
+            } else {
+                status = STATUS_MEASURING;
+            }
+        } else if (normalMode) {
+            long measurement = measurementNanos();
+            long period = measurement + STANDBY_MICROS[(registers[CONFIG_REGISTER] & 0xFF) >> 5] * 1000;
+            long elapsed = now - normalStartNanos;
+            long results = elapsed < measurement ? 0 : (elapsed - measurement) / period + 1;
+            if (results != resultCount) {
+                resultCount = results;
+                measure();
+            }
+            if (elapsed % period < measurement)
+                status = STATUS_MEASURING;
+        }
+        registers[STATUS_REGISTER] = (byte) status;
+    }
+
+    private void measure() {
+        int control = registers[CONTROL_REGISTER] & 0xFF;
+        int rawTemperature = rawTemperature();
+        int rawPressure = rawPressure(calibration.computeTFine(rawTemperature));
+        setData(control >> 5 == 0 ? SKIPPED : rawTemperature,
+                ((control >> 2) & 0x07) == 0 ? SKIPPED : rawPressure);
+    }
+
+    private void setData(int rawTemperature, int rawPressure) {
+        registers[DATA_REGISTER] = (byte) (rawPressure >> 12);
+        registers[DATA_REGISTER + 1] = (byte) (rawPressure >> 4);
+        registers[DATA_REGISTER + 2] = (byte) (rawPressure << 4);
+        registers[DATA_REGISTER + 3] = (byte) (rawTemperature >> 12);
+        registers[DATA_REGISTER + 4] = (byte) (rawTemperature >> 4);
+        registers[DATA_REGISTER + 5] = (byte) (rawTemperature << 4);
+    }
+
+    /**
+     * Smallest raw temperature compensated to at least the temperature set.
+     */
+    private int rawTemperature() {
+        if (rawTemperatureSet >= 0)
+            return rawTemperatureSet;
+        int low = 0;
+        int high = 0xFFFFF;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (BMP280Calibration.temperatureFromTFine(calibration.computeTFine(middle)) < temperature)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * Raw pressure compensated to the pressure set; the pressure falls with the raw value.
+     */
+    private int rawPressure(long tFine) {
+        if (rawPressureSet >= 0)
+            return rawPressureSet;
+        int low = 0;
+        int high = 0xFFFFF;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (calibration.compensatePressure(middle, (double) tFine) > pressure)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,380 @@
+package de.patricksteinert.rpisensorlib.sim;
+
+import de.patricksteinert.rpisensorlib.SHT15;
+import de.patricksteinert.rpisensorlib.Sleeper;
+import de.patricksteinert.rpisensorlib.TwoWireInterface;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Emulates an SHT1x on its two-wire interface, taking the place of the GPIO pins: transmission
+ * start, command bits and acknowledge, measurements with the measurement times of the
+ * datasheet, data bytes with CRC-8, the status register and the connection reset.
+ * <p>
+ * The raw values are derived from the temperature and humidity set on the emulator with the
+ * conversion coefficients of the datasheet (V4, 5 V).
+ */
+public class SHT15Emulator implements TwoWireInterface {
+
+    private static final int MEASURE_TEMPERATURE = 0x03;
+    private static final int MEASURE_HUMIDITY = 0x05;
+    private static final int READ_STATUS = 0x07;
+    private static final int WRITE_STATUS = 0x06;
+    private static final int SOFT_RESET = 0x1E;
+
+    private static final int STATUS_LOW_RESOLUTION = 0x01;
+    private static final int STATUS_WRITABLE = 0x07;
+
+    private enum State {
+        IDLE, START, COMMAND, COMMAND_ACK, MEASURING, SENDING, SEND_ACK, RECEIVING, RECEIVE_ACK
+    }
+
+    private double temperature = 25.0;
+    private double humidity = 50.0;
+    // Raw values set directly, -1 to derive them from temperature and humidity
+    private int rawTemperatureSet = -1;
+    private int rawHumiditySet = -1;
+    private int status;
+    private boolean corruptCrc;
+
+    // Lines
+    private boolean clockHigh;
+    private boolean hostOutput;
+    private boolean hostHigh;
+    private boolean sensorLow;
+
+    // Protocol
+    private State state = State.IDLE;
+    private int bits;
+    private int shift;
+    private int command;
+    private long readyNanos;
+    private int[] response;
+    private int responseIndex;
+    private int resetClocks;
+
+    private final Sleeper sleeper;
+
+    /**
+     * Creates an emulator on the system clock.
+     */
+    public SHT15Emulator() {
+        this(Sleeper.SYSTEM);
+    }
+
+    /**
+     * @param sleeper the clock of the emulator and of the driver using it, e.g. of a replay
+     */
+    public SHT15Emulator(Sleeper sleeper) {
+        this.sleeper = sleeper;
+    }
+
+    @Override
+    public Sleeper getSleeper() {
+        return sleeper;
+    }
+
+    /**
+     * @param temperature temperature in Celsius measured by the following measurements
+     */
+    public synchronized void setTemperature(double temperature) {
+        this.temperature = temperature;
+        this.rawTemperatureSet = -1;
+    }
+
+    /**
+     * @param humidity relative humidity in percent measured by the following measurements
+     */
+    public synchronized void setHumidity(double humidity) {
+        this.humidity = humidity;
+        this.rawHumiditySet = -1;
+    }
+
+    /**
+     * Sets the raw temperature the following measurements deliver, e.g. from a recording.
+     *
+     * @param rawTemperature the raw value as read by the driver
+     */
+    public synchronized void setRawTemperature(int rawTemperature) {
+        this.rawTemperatureSet = rawTemperature;
+    }
+
+    /**
+     * Sets the raw humidity the following measurements deliver, e.g. from a recording.
+     *
+     * @param rawHumidity the raw value as read by the driver
+     */
+    public synchronized void setRawHumidity(int rawHumidity) {
+        this.rawHumiditySet = rawHumidity;
+    }
+
+    /**
+     * Flips a bit in the CRC of the next response, to exercise the error handling of the
+     * driver.
+     */
+    public synchronized void corruptNextCrc() {
+        this.corruptCrc = true;
+    }
+
+    /**
+     * @return the status register
+     */
+    public synchronized int getStatus() {
+        return status;
+    }
+
+    @Override
+    public synchronized void setClock(boolean high) {
+        if (high == clockHigh)
+            return;
+        clockHigh = high;
+        if (high)
+            risingEdge();
+        else
+            fallingEdge();
+    }
+
+    @Override
+    public synchronized void setDataOutput(boolean output) {
+        boolean before = line();
+        hostOutput = output;
+        dataChanged(before);
+    }
+
+    @Override
+    public synchronized void setData(boolean high) {
+        boolean before = line();
+        hostHigh = high;
+        dataChanged(before);
+    }
+
+    @Override
+    public synchronized boolean isDataHigh() {
+        if (state == State.MEASURING && now() - readyNanos >= 0) {
+            // Measurement done, the sensor pulls the data line low and waits for the clock
+            state = State.SENDING;
+            sensorLow = true;
+            bits = 0;
+        }
+        return line();
+    }
+
+    /**
+     * Returns when the measurement in progress completes, like an edge event would.
+     */
+    @Override
+    public boolean awaitDataLow(long timeoutNanos) throws InterruptedException {
+        long wait;
+        synchronized (this) {
+            if (!isDataHigh())
+                return true;
+            wait = state == State.MEASURING ? Math.max(0, readyNanos - now()) : timeoutNanos;
+        }
+        sleeper.sleepNanos(Math.min(wait, timeoutNanos));
+        return !isDataHigh();
+    }
+
+    private boolean line() {
+        return !sensorLow && !(hostOutput && !hostHigh);
+    }
+
+    /**
+     * Transmission start: data falls and rises again while the clock is high.
+     */
+    private void dataChanged(boolean before) {
+        boolean after = line();
+        if (!clockHigh || before == after)
+            return;
+        if (!after) {
+            if (state == State.IDLE)
+                state = State.START;
+        } else if (state == State.START) {
+            state = State.COMMAND;
+            bits = 0;
+            shift = 0;
+        }
+    }
+
+    private void risingEdge() {
+        boolean data = line();
+        resetClocks = data ? resetClocks + 1 : 0;
+        switch (state) {
+            case COMMAND:
+            case RECEIVING:
+                shift = (shift << 1) | (data ? 1 : 0);
+                bits++;
+                break;
+            case SENDING:
+                // Present the next bit, most significant first
+                sensorLow = (response[responseIndex] & (0x80 >> bits)) == 0;
+                bits++;
+                break;
+            case SEND_ACK:
+                if (!data && responseIndex + 1 < response.length) {
+                    responseIndex++;
+                    bits = 0;
+                    state = State.SENDING;
+                } else {
+                    // No acknowledge ends the transmission, e.g. to skip the CRC
+                    state = State.IDLE;
+                }
+                break;
+            default:
+        }
+    }
+
+    private void fallingEdge() {
+        switch (state) {
+            case COMMAND:
+                if (bits == 8) {
+                    command = shift;
+                    sensorLow = true;
+                    state = State.COMMAND_ACK;
+                }
+                break;
+            case COMMAND_ACK:
+                sensorLow = false;
+                executeCommand();
+                break;
+            case SENDING:
+                if (bits == 8) {
+                    sensorLow = false;
+                    state = State.SEND_ACK;
+                }
+                break;
+            case RECEIVING:
+                if (bits == 8) {
+                    status = (status & ~STATUS_WRITABLE) | (shift & STATUS_WRITABLE);
+                    sensorLow = true;
+                    state = State.RECEIVE_ACK;
+                }
+                break;
+            case RECEIVE_ACK:
+                sensorLow = false;
+                state = State.IDLE;
+                break;
+            default:
+        }
+        if (resetClocks >= 9) {
+            // Connection reset: nine clocks with data high
+            resetClocks = 0;
+            sensorLow = false;
+            state = State.IDLE;
+        }
+    }
+
+    private void executeCommand() {
+        boolean lowResolution = (status & STATUS_LOW_RESOLUTION) != 0;
+        switch (command) {
+            case MEASURE_TEMPERATURE:
+                startMeasurement(rawTemperature(lowResolution), lowResolution ? 80 : 320);
+                break;
+            case MEASURE_HUMIDITY:
+                startMeasurement(rawHumidity(lowResolution), lowResolution ? 20 : 80);
+                break;
+            case READ_STATUS:
+                respond(new int[]{status});
+                state = State.SENDING;
+                sensorLow = false;
+                bits = 0;
+                break;
+            case WRITE_STATUS:
+                state = State.RECEIVING;
+                bits = 0;
+                shift = 0;
+                break;
+            case SOFT_RESET:
+                status = 0;
+                state = State.IDLE;
+                break;
+            default:
+                state = State.IDLE;
+        }
+    }
+
+    private void startMeasurement(int raw, long millis) {
+        respond(new int[]{(raw >> 8) & 0xFF, raw & 0xFF});
+        readyNanos = now() + TimeUnit.MILLISECONDS.toNanos(millis);
+        state = State.MEASURING;
+    }
+
+    /**
+     * Sets the bytes to send followed by their CRC.
+     */
+    private void respond(int[] data) {
+        response = new int[data.length + 1];
+        int crc = reverse(status & 0x0F);
+        crc = crc8(crc, command);
+        for (int i = 0; i < data.length; i++) {
+            response[i] = data[i];
+            crc = crc8(crc, data[i]);
+        }
+        response[data.length] = reverse(crc);
+        if (corruptCrc) {
+            response[data.length] ^= 0x01;
+            corruptCrc = false;
+        }
+        responseIndex = 0;
+    }
+
+    /**
+     * CRC-8 with the polynomial x^8 + x^5 + x^4 + 1, most significant bit first.
+     */
+    static int crc8(int crc, int data) {
+        crc ^= data;
+        for (int i = 0; i < 8; i++)
+            crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x31) & 0xFF : (crc << 1) & 0xFF;
+        return crc;
+    }
+
+    private long now() {
+        return sleeper.nanoTime();
+    }
+
+    private static int reverse(int b) {
+        return Integer.reverse(b) >>> 24;
+    }
+
+    private int rawTemperature(boolean lowResolution) {
+        if (rawTemperatureSet >= 0)
+            return rawTemperatureSet;
+        double d2 = lowResolution ? SHT15.D2_LOW : SHT15.D2;
+        long raw = Math.round((temperature - SHT15.D1) / d2);
+        return (int) Math.max(0, Math.min(lowResolution ? 0xFFF : 0x3FFF, raw));
+    }
+
+    /**
+     * Solves the temperature compensated humidity conversion for the raw value.
+     */
+    private int rawHumidity(boolean lowResolution) {
+        if (rawHumiditySet >= 0)
+            return rawHumiditySet;
+        double c1, c2, c3, t1, t2;
+        int max;
+        if (lowResolution) {
+            c1 = SHT15.C1_LOW;
+            c2 = SHT15.C2_LOW;
+            c3 = SHT15.C3_LOW;
+            t1 = SHT15.T1_LOW;
+            t2 = SHT15.T2_LOW;
+            max = 0xFF;
+        } else {
+            c1 = SHT15.C1;
+            c2 = SHT15.C2;
+            c3 = SHT15.C3;
+            t1 = SHT15.T1;
+            t2 = SHT15.T2;
+            max = 0xFFF;
+        }
+        // The driver compensates with the temperature it converts from the raw value
+        double temperature = rawTemperature(lowResolution) * (lowResolution ? SHT15.D2_LOW : SHT15.D2) + SHT15.D1;
+        double a = c3;
+        double b = c2 + (temperature - 25) * t2;
+        double c = c1 + (temperature - 25) * t1 - humidity;
+        double discriminant = b * b - 4 * a * c;
+        if (discriminant < 0)
+            return max;
+        long raw = Math.round((-b + Math.sqrt(discriminant)) / (2 * a));
+        return (int) Math.max(0, Math.min(max, raw));
+    }
+}
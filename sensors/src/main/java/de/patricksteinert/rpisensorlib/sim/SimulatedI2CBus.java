@@ -0,0 +1,198 @@
+package de.patricksteinert.rpisensorlib.sim;
+
+import com.pi4j.io.i2c.I2CDevice;
+import de.patricksteinert.rpisensorlib.Sleeper;
+import de.patricksteinert.rpisensorlib.bus.ClockedI2CBus;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * I2C bus connecting the drivers to device emulators instead of the hardware, so they can be
+ * exercised off the Raspberry Pi. Every transaction takes the time it would take on the wire,
+ * a fixed overhead plus the time per byte. The bus has a clock, the system clock or e.g. the
+ * virtual clock of a replay; the emulators attached and the drivers on the bus use it.
+ * <pre>
+ * SimulatedI2CBus simulated = new SimulatedI2CBus();
+ * BMP280Emulator emulator = new BMP280Emulator(AdafruitBMP280.BMP280_ADDRESS);
+ * simulated.attach(emulator);
+ * ManagedI2CBus bus = I2CBusManager.getInstance().register(42, simulated);
+ * AdafruitBMP280 bmp280 = new AdafruitBMP280(bus.getDevice(AdafruitBMP280.BMP280_ADDRESS));
+ * </pre>
+ */
+public class SimulatedI2CBus implements ClockedI2CBus {
+
+    /**
+     * Start condition, address byte and stop condition on a 100 kHz bus, plus driver overhead.
+     */
+    public static final long DEFAULT_TRANSACTION_OVERHEAD_MICROS = 150;
+
+    /**
+     * 8 data bits and the acknowledge bit at 100 kHz.
+     */
+    public static final long DEFAULT_BYTE_MICROS = 90;
+
+    private final Map<Integer, SimulatedI2CDevice> devices = new ConcurrentHashMap<Integer, SimulatedI2CDevice>();
+    private volatile long transactionOverheadNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_TRANSACTION_OVERHEAD_MICROS);
+    private volatile long byteNanos = TimeUnit.MICROSECONDS.toNanos(DEFAULT_BYTE_MICROS);
+    private final Sleeper sleeper;
+
+    /**
+     * Creates a bus on the system clock.
+     */
+    public SimulatedI2CBus() {
+        this(Sleeper.SYSTEM);
+    }
+
+    /**
+     * @param sleeper the clock of the bus, its emulators and drivers
+     */
+    public SimulatedI2CBus(Sleeper sleeper) {
+        if (sleeper == null)
+            throw new IllegalArgumentException("Sleeper must not be null");
+        this.sleeper = sleeper;
+    }
+
+    @Override
+    public Sleeper getSleeper() {
+        return sleeper;
+    }
+
+    /**
+     * Connects an emulator to the bus at its address; the emulator runs on the clock of the bus.
+     */
+    public void attach(SimulatedI2CDevice device) {
+        if (devices.putIfAbsent(device.getAddress(), device) != null)
+            throw new IllegalStateException("Address 0x" + Integer.toHexString(device.getAddress()) + " is in use");
+        device.setSleeper(sleeper);
+    }
+
+    /**
+     * Sets the time a transaction takes; use 0, 0 to measure the drivers without bus latency.
+     *
+     * @param overheadMicros time of every transaction
+     * @param byteMicros     time per byte transferred
+     */
+    public void setTransactionLatency(long overheadMicros, long byteMicros) {
+        if (overheadMicros < 0 || byteMicros < 0)
+            throw new IllegalArgumentException("Latency must not be negative");
+        this.transactionOverheadNanos = TimeUnit.MICROSECONDS.toNanos(overheadMicros);
+        this.byteNanos = TimeUnit.MICROSECONDS.toNanos(byteMicros);
+    }
+
+    /**
+     * Returns the device at the address. Like on a real bus, accessing an address without
+     * device fails only when it is accessed.
+     */
+    @Override
+    public I2CDevice getDevice(int address) {
+        return new Device(address);
+    }
+
+    @Override
+    public String getFileName() {
+        return "simulated";
+    }
+
+    @Override
+    public int getFileDescriptor() {
+        return -1;
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void transfer(int bytes) {
+        long latency = transactionOverheadNanos + bytes * byteNanos;
+        if (latency <= 0)
+            return;
+        try {
+            sleeper.sleepNanos(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private final class Device implements I2CDevice {
+        private final int address;
+
+        Device(int address) {
+            this.address = address;
+        }
+
+        private SimulatedI2CDevice target() throws IOException {
+            SimulatedI2CDevice device = devices.get(address);
+            if (device == null)
+                throw new IOException("No device at address 0x" + Integer.toHexString(address));
+            return device;
+        }
+
+        @Override
+        public void write(byte b) throws IOException {
+            write(new byte[]{b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int size) throws IOException {
+            SimulatedI2CDevice device = target();
+            transfer(size);
+            device.write(buffer, offset, size);
+        }
+
+        @Override
+        public void write(int register, byte b) throws IOException {
+            write(new byte[]{(byte) register, b}, 0, 2);
+        }
+
+        @Override
+        public void write(int register, byte[] buffer, int offset, int size) throws IOException {
+            byte[] data = new byte[size + 1];
+            data[0] = (byte) register;
+            System.arraycopy(buffer, offset, data, 1, size);
+            write(data, 0, data.length);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] buffer = new byte[1];
+            read(buffer, 0, 1);
+            return buffer[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int size) throws IOException {
+            SimulatedI2CDevice device = target();
+            transfer(size);
+            device.read(buffer, offset, size);
+            return size;
+        }
+
+        @Override
+        public int read(int register) throws IOException {
+            byte[] buffer = new byte[1];
+            read(register, buffer, 0, 1);
+            return buffer[0] & 0xFF;
+        }
+
+        @Override
+        public int read(int register, byte[] buffer, int offset, int size) throws IOException {
+            return read(new byte[]{(byte) register}, 0, 1, buffer, offset, size);
+        }
+
+        @Override
+        public int read(byte[] writeBuffer, int writeOffset, int writeSize,
+                        byte[] readBuffer, int readOffset, int readSize) throws IOException {
+            SimulatedI2CDevice device = target();
+            // Write and read are one transaction with a repeated start
+            transfer(writeSize + readSize + 1);
+            synchronized (device) {
+                device.write(writeBuffer, writeOffset, writeSize);
+                device.read(readBuffer, readOffset, readSize);
+            }
+            return readSize;
+        }
+    }
+}
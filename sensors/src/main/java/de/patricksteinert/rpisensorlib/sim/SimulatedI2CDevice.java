@@ -0,0 +1,116 @@
+package de.patricksteinert.rpisensorlib.sim;
+
+import de.patricksteinert.rpisensorlib.Sleeper;
+
+/**
+ * Base class of the device emulators attached to a {@link SimulatedI2CBus}. The default
+ * implementation models the common byte wide register map with a register pointer: the first
+ * byte written in a transaction selects the register, following bytes are written to
+ * consecutive registers and reads return consecutive registers from the pointer on.
+ * <p>
+ * Emulators override {@link #readRegister(int)} and {@link #writeRegister(int, int)} to react to
+ * register accesses, e.g. to start a conversion or to update data registers that depend on time.
+ * All methods are called with the monitor of the device held.
+ */
+public abstract class SimulatedI2CDevice {
+
+    private final int address;
+    protected final byte[] registers = new byte[256];
+    private int pointer;
+    private volatile Sleeper sleeper = Sleeper.SYSTEM;
+
+    protected SimulatedI2CDevice(int address) {
+        this.address = address;
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Handles a write transaction.
+     *
+     * @param data   the bytes written, the first one addresses the register
+     * @param offset offset of the first byte
+     * @param size   number of bytes
+     */
+    protected synchronized void write(byte[] data, int offset, int size) {
+        if (size == 0)
+            return;
+        int i = offset;
+        if (isRegisterSelect(data[i] & 0xFF))
+            pointer = selectRegister(data[i++] & 0xFF);
+        for (; i < offset + size; i++)
+            writeRegister(pointer++ & 0xFF, data[i] & 0xFF);
+    }
+
+    /**
+     * Handles a read transaction.
+     *
+     * @param buffer receives the bytes read
+     * @param offset offset of the first byte
+     * @param size   number of bytes
+     */
+    protected synchronized void read(byte[] buffer, int offset, int size) {
+        for (int i = offset; i < offset + size; i++)
+            buffer[i] = (byte) readRegister(pointer++ & 0xFF);
+    }
+
+    /**
+     * @param firstByte first byte of a write transaction
+     * @return true if the byte addresses a register, false if it is data for the current register
+     */
+    protected boolean isRegisterSelect(int firstByte) {
+        return true;
+    }
+
+    /**
+     * @param command the register addressing byte
+     * @return the register addressed
+     */
+    protected int selectRegister(int command) {
+        return command;
+    }
+
+    protected int readRegister(int register) {
+        return registers[register] & 0xFF;
+    }
+
+    protected void writeRegister(int register, int value) {
+        registers[register] = (byte) value;
+    }
+
+    /**
+     * Stores a 16 bit value, most significant byte first.
+     */
+    protected void setBigEndian16(int register, int value) {
+        registers[register] = (byte) (value >> 8);
+        registers[register + 1] = (byte) value;
+    }
+
+    /**
+     * Stores a 16 bit value, least significant byte first.
+     */
+    protected void setLittleEndian16(int register, int value) {
+        registers[register] = (byte) value;
+        registers[register + 1] = (byte) (value >> 8);
+    }
+
+    void setSleeper(Sleeper sleeper) {
+        this.sleeper = sleeper;
+    }
+
+    /**
+     * @return the clock of the bus the emulator is attached to, the same clock the drivers use
+     */
+    protected Sleeper getSleeper() {
+        return sleeper;
+    }
+
+    /**
+     * Time used to model conversions.
+     */
+    protected long now() {
+        return sleeper.nanoTime();
+    }
+}
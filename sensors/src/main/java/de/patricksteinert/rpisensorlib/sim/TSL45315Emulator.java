@@ -0,0 +1,102 @@
+package de.patricksteinert.rpisensorlib.sim;
+
+/**
+ * Emulates a TSL45315: command byte addressing, power modes, the integration times of the
+ * config register and the data registers, which are updated at the end of every integration
+ * cycle with the illuminance set on the emulator.
+ */
+public class TSL45315Emulator extends SimulatedI2CDevice {
+
+    public static final int ADDRESS = 0x29;
+
+    private static final int COMMAND = 0x80;
+    private static final int CONTROL_REGISTER = 0x00;
+    private static final int CONFIG_REGISTER = 0x01;
+    private static final int DATA_LOW_REGISTER = 0x04;
+    private static final int ID_REGISTER = 0x0A;
+    private static final int DEVICE_ID = 0xA0;
+
+    private static final int MODE_POWER_DOWN = 0x00;
+    private static final int MODE_SINGLE = 0x02;
+    private static final int MODE_NORMAL = 0x03;
+
+    private static final long[] INTEGRATION_MILLIS = {400, 200, 100};
+    private static final int[] MULTIPLIER = {1, 2, 4};
+
+    private double lux = 100;
+
+    private long cycleStartNanos;
+    private long cycles;
+
+    public TSL45315Emulator() {
+        this(ADDRESS);
+    }
+
+    public TSL45315Emulator(int address) {
+        super(address);
+        registers[ID_REGISTER] = (byte) DEVICE_ID;
+    }
+
+    /**
+     * @param lux illuminance measured by the following integration cycles
+     */
+    public synchronized void setLux(double lux) {
+        this.lux = lux;
+    }
+
+    /**
+     * Only bytes with the command bit set address a register; other bytes are data for the
+     * register addressed last.
+     */
+    @Override
+    protected boolean isRegisterSelect(int firstByte) {
+        return (firstByte & COMMAND) != 0;
+    }
+
+    @Override
+    protected int selectRegister(int command) {
+        return command & 0x1F;
+    }
+
+    @Override
+    protected int readRegister(int register) {
+        update();
+        return super.readRegister(register);
+    }
+
+    @Override
+    protected void writeRegister(int register, int value) {
+        update();
+        if (register == CONTROL_REGISTER) {
+            registers[CONTROL_REGISTER] = (byte) (value & 0x03);
+            cycleStartNanos = now();
+            cycles = 0;
+        } else if (register == CONFIG_REGISTER) {
+            // A new integration time starts a new cycle
+            registers[CONFIG_REGISTER] = (byte) (value & 0x0B);
+            cycleStartNanos = now();
+            cycles = 0;
+        }
+        // All other registers are read only
+    }
+
+    private int integrationIndex() {
+        return Math.min(registers[CONFIG_REGISTER] & 0x03, INTEGRATION_MILLIS.length - 1);
+    }
+
+    private void update() {
+        int mode = registers[CONTROL_REGISTER] & 0x03;
+        if (mode != MODE_NORMAL && mode != MODE_SINGLE)
+            return;
+        long completed = (now() - cycleStartNanos) / (INTEGRATION_MILLIS[integrationIndex()] * 1000000L);
+        if (mode == MODE_SINGLE)
+            completed = Math.min(completed, 1);
+        if (completed == cycles)
+            return;
+        cycles = completed;
+        long count = Math.round(lux / MULTIPLIER[integrationIndex()]);
+        setLittleEndian16(DATA_LOW_REGISTER, (int) Math.max(0, Math.min(0xFFFF, count)));
+        if (mode == MODE_SINGLE)
+            registers[CONTROL_REGISTER] = MODE_POWER_DOWN;
+    }
+}
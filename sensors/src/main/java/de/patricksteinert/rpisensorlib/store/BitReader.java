@@ -0,0 +1,53 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the bit fields written by {@link BitWriter} from a {@link ByteBuffer}.
+ */
+final class BitReader {
+
+    private ByteBuffer buffer;
+    private int offset;
+    private long bits;
+    private int count;
+
+    /**
+     * @param buffer the buffer, read with absolute gets
+     * @param offset index of the first byte
+     */
+    void reset(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+        bits = 0;
+        count = 0;
+    }
+
+    boolean readBit() {
+        return readBits(1) != 0;
+    }
+
+    /**
+     * @param n number of bits, 0..32
+     * @return the bits, right aligned
+     */
+    long readBits(int n) {
+        if (n == 0)
+            return 0;
+        while (count < n) {
+            bits = (bits << 8) | (buffer.get(offset++) & 0xFF);
+            count += 8;
+        }
+        count -= n;
+        return (bits >>> count) & (-1L >>> (64 - n));
+    }
+
+    /**
+     * @param n number of bits, 0..64
+     */
+    long readLong(int n) {
+        if (n > 32)
+            return (readBits(n - 32) << 32) | readBits(32);
+        return readBits(n);
+    }
+}
@@ -0,0 +1,58 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes bit fields, most significant bit first, into a {@link ByteBuffer} at its position.
+ */
+final class BitWriter {
+
+    private ByteBuffer buffer;
+    private long bits;
+    private int count;
+
+    void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        bits = 0;
+        count = 0;
+    }
+
+    void writeBit(boolean bit) {
+        writeBits(bit ? 1 : 0, 1);
+    }
+
+    /**
+     * @param value the bits, right aligned
+     * @param n     number of bits, 0..32
+     */
+    void writeBits(long value, int n) {
+        if (n == 0)
+            return;
+        bits = (bits << n) | (value & (-1L >>> (64 - n)));
+        count += n;
+        while (count >= 8) {
+            count -= 8;
+            buffer.put((byte) (bits >>> count));
+        }
+    }
+
+    /**
+     * @param n number of bits, 0..64
+     */
+    void writeLong(long value, int n) {
+        if (n > 32) {
+            writeBits(value >>> 32, n - 32);
+            writeBits(value, 32);
+        } else {
+            writeBits(value, n);
+        }
+    }
+
+    /**
+     * Writes the pending bits, padded with zeros to a full byte.
+     */
+    void flush() {
+        if (count > 0)
+            writeBits(0, 8 - count);
+    }
+}
@@ -0,0 +1,105 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Index of the blocks of a stream written by {@link SampleEncoder}: offset, first timestamp
+ * and number of samples of every block. Blocks are decoded independently, so a reader seeks
+ * to a timestamp by a binary search over the blocks and decodes a single block.
+ */
+public final class BlockIndex {
+
+    private long[] firstTimestamps = new long[16];
+    private int[] offsets = new int[16];
+    private int[] sampleCounts = new int[16];
+    private int size;
+
+    /**
+     * Rebuilds the index of a stream from its block headers, e.g. after reading it from a file.
+     *
+     * @param buffer the stream from its position to its limit
+     * @return the index of the complete blocks
+     */
+    public static BlockIndex scan(ByteBuffer buffer) {
+        BlockIndex index = new BlockIndex();
+        int offset = buffer.position();
+        while (offset + SampleEncoder.HEADER_SIZE <= buffer.limit()) {
+            int count = SampleEncoder.headerSampleCount(buffer, offset);
+            int length = SampleEncoder.headerLength(buffer, offset);
+            if (count <= 0 || length < SampleEncoder.HEADER_SIZE || offset + length > buffer.limit())
+                break;
+            index.add(offset, SampleEncoder.headerFirstTimestamp(buffer, offset), count);
+            offset += length;
+        }
+        return index;
+    }
+
+    void add(int offset, long firstTimestamp, int sampleCount) {
+        if (size == offsets.length) {
+            firstTimestamps = Arrays.copyOf(firstTimestamps, size * 2);
+            offsets = Arrays.copyOf(offsets, size * 2);
+            sampleCounts = Arrays.copyOf(sampleCounts, size * 2);
+        }
+        firstTimestamps[size] = firstTimestamp;
+        offsets[size] = offset;
+        sampleCounts[size] = sampleCount;
+        size++;
+    }
+
+    void setSampleCount(int block, int sampleCount) {
+        sampleCounts[block] = sampleCount;
+    }
+
+    /**
+     * @return number of blocks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return index of the first byte of the block in the buffer
+     */
+    public int getOffset(int block) {
+        return offsets[block];
+    }
+
+    public long getFirstTimestamp(int block) {
+        return firstTimestamps[block];
+    }
+
+    public int getSampleCount(int block) {
+        return sampleCounts[block];
+    }
+
+    /**
+     * @return total number of samples in the blocks
+     */
+    public long getSampleCount() {
+        long total = 0;
+        for (int i = 0; i < size; i++)
+            total += sampleCounts[i];
+        return total;
+    }
+
+    /**
+     * @param timestampNanos the timestamp
+     * @return the block that contains the timestamp: the last block starting at or before it,
+     * 0 if the timestamp is before the first block, -1 if the index is empty
+     */
+    public int find(long timestampNanos) {
+        int low = 0;
+        int high = size - 1;
+        if (high < 0)
+            return -1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (firstTimestamps[mid] <= timestampNanos)
+                low = mid;
+            else
+                high = mid - 1;
+        }
+        return low;
+    }
+}
@@ -0,0 +1,89 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Reads the records of a {@link SampleStore} in the order they were appended, straight from
+ * the mapped segment files: the getters read the fields of the current record in place,
+ * nothing is copied or allocated per record.
+ * <p>
+ * The cursor follows the tail of the store: when {@link #next()} returns false because the
+ * writer has not appended more records yet, a later call continues with the new ones. A cursor
+ * is used by one thread.
+ */
+public class SampleCursor {
+
+    private final File directory;
+
+    private Segment segment;
+    private int record = -1;
+    private int offset = -Segment.RECORD_SIZE;
+
+    SampleCursor(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false if there is no further record yet
+     * @throws IOException if a segment cannot be mapped
+     */
+    public boolean next() throws IOException {
+        if (segment == null) {
+            List<Integer> segments = Segment.list(directory);
+            if (segments.isEmpty() || (segment = Segment.openReadOnly(directory, segments.get(0))) == null)
+                return false;
+        }
+        while (true) {
+            int candidate = record + 1;
+            if (candidate < segment.capacity) {
+                if (!segment.isValid(candidate))
+                    return false;
+                record = candidate;
+                offset = record * Segment.RECORD_SIZE;
+                return true;
+            }
+            // Segment done, the writer has moved on if the next one exists
+            Segment following = Segment.openReadOnly(directory, segment.index + 1);
+            if (following == null)
+                return false;
+            segment = following;
+            record = -1;
+        }
+    }
+
+    public int getSensorId() {
+        return segment.buffer.getInt(offset + Segment.SENSOR_ID);
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the sample was taken
+     */
+    public long getTimestampNanos() {
+        return segment.buffer.getLong(offset + Segment.TIMESTAMP);
+    }
+
+    /**
+     * @return the first raw value or {@link SampleStore#NO_RAW_VALUE}
+     */
+    public int getRaw1() {
+        return segment.buffer.getInt(offset + Segment.RAW_1);
+    }
+
+    /**
+     * @return the second raw value or {@link SampleStore#NO_RAW_VALUE}
+     */
+    public int getRaw2() {
+        return segment.buffer.getInt(offset + Segment.RAW_2);
+    }
+
+    /**
+     * @return the compensated value
+     */
+    public double getValue() {
+        return Double.longBitsToDouble(segment.buffer.getLong(offset + Segment.VALUE));
+    }
+}
@@ -0,0 +1,139 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes a stream written by {@link SampleEncoder} sample by sample, reading the buffer in
+ * place without allocating. A decoder is used by one thread.
+ * <pre>
+ * SampleDecoder decoder = new SampleDecoder(stream);
+ * if (decoder.seek(index, fromNanos)) {
+ *     do {
+ *         process(decoder.getTimestampNanos(), decoder.getValue());
+ *     } while (decoder.next());
+ * }
+ * </pre>
+ */
+public final class SampleDecoder {
+
+    private final ByteBuffer buffer;
+    private final int start;
+    private final int limit;
+    private final BitReader reader = new BitReader();
+
+    private int nextBlockOffset;
+    private int blockRemaining;
+    private long timestamp;
+    private long delta;
+    private long valueBits;
+    private int leading;
+    private int trailing;
+
+    /**
+     * @param buffer the stream from its position to its limit, read with absolute gets
+     */
+    public SampleDecoder(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.start = buffer.position();
+        this.limit = buffer.limit();
+        this.nextBlockOffset = start;
+    }
+
+    /**
+     * Moves to the next sample.
+     *
+     * @return false at the end of the complete blocks
+     */
+    public boolean next() {
+        if (blockRemaining > 0) {
+            decodeTimestamp();
+            decodeValue();
+            blockRemaining--;
+            return true;
+        }
+        if (nextBlockOffset + SampleEncoder.HEADER_SIZE > limit)
+            return false;
+        int count = SampleEncoder.headerSampleCount(buffer, nextBlockOffset);
+        int length = SampleEncoder.headerLength(buffer, nextBlockOffset);
+        if (count <= 0 || length < SampleEncoder.HEADER_SIZE || nextBlockOffset + length > limit)
+            return false;
+        timestamp = SampleEncoder.headerFirstTimestamp(buffer, nextBlockOffset);
+        valueBits = SampleEncoder.headerFirstValueBits(buffer, nextBlockOffset);
+        delta = 0;
+        leading = -1;
+        reader.reset(buffer, nextBlockOffset + SampleEncoder.HEADER_SIZE);
+        nextBlockOffset += length;
+        blockRemaining = count - 1;
+        return true;
+    }
+
+    /**
+     * Moves to the first sample at or after the timestamp, decoding only the block that
+     * contains it.
+     *
+     * @param index          index of the stream
+     * @param timestampNanos the timestamp
+     * @return false if there is no such sample
+     */
+    public boolean seek(BlockIndex index, long timestampNanos) {
+        int block = index.find(timestampNanos);
+        if (block < 0)
+            return false;
+        nextBlockOffset = index.getOffset(block);
+        blockRemaining = 0;
+        while (next()) {
+            if (timestamp >= timestampNanos)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Moves before the first sample of the stream.
+     */
+    public void rewind() {
+        nextBlockOffset = start;
+        blockRemaining = 0;
+    }
+
+    public long getTimestampNanos() {
+        return timestamp;
+    }
+
+    public double getValue() {
+        return Double.longBitsToDouble(valueBits);
+    }
+
+    private void decodeTimestamp() {
+        long deltaOfDelta;
+        if (!reader.readBit())
+            deltaOfDelta = 0;
+        else if (!reader.readBit())
+            deltaOfDelta = signed(reader.readBits(7), 7);
+        else if (!reader.readBit())
+            deltaOfDelta = signed(reader.readBits(14), 14);
+        else if (!reader.readBit())
+            deltaOfDelta = signed(reader.readBits(20), 20);
+        else if (!reader.readBit())
+            deltaOfDelta = signed(reader.readBits(32), 32);
+        else
+            deltaOfDelta = reader.readLong(64);
+        delta += deltaOfDelta;
+        timestamp += delta;
+    }
+
+    private void decodeValue() {
+        if (!reader.readBit())
+            return;
+        if (reader.readBit()) {
+            leading = (int) reader.readBits(5);
+            int meaningful = (int) reader.readBits(6) + 1;
+            trailing = 64 - leading - meaningful;
+        }
+        valueBits ^= reader.readLong(64 - leading - trailing) << trailing;
+    }
+
+    private static long signed(long bits, int n) {
+        return (bits << (64 - n)) >> (64 - n);
+    }
+}
@@ -0,0 +1,207 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compresses a stream of (timestamp, value) samples into a {@link ByteBuffer}, following the
+ * Gorilla time series encoding: timestamps as delta of deltas, values as the XOR with the
+ * previous value, of which only the bits that differ are written. Samples of slowly changing
+ * readings often take two to four bytes instead of sixteen. The encoding is lossless.
+ * <p>
+ * The stream consists of blocks of up to {@code blockSamples} samples. Each block starts with
+ * a header holding the number of samples, its length in bytes and the first sample, and is
+ * decoded independently; the {@link BlockIndex} of the encoder lets a {@link SampleDecoder}
+ * seek to a timestamp. Header fields use the byte order of the buffer.
+ * <p>
+ * Timestamp buckets: {@code 0} same delta, {@code 10} + 7 bits, {@code 110} + 14 bits,
+ * {@code 1110} + 20 bits, {@code 11110} + 32 bits, {@code 11111} + 64 bits delta of delta,
+ * sized for nanosecond timestamps with scheduler jitter of a few microseconds.
+ * <p>
+ * Appending does not allocate. An encoder is used by one thread.
+ * <pre>
+ * SampleEncoder encoder = new SampleEncoder(ByteBuffer.allocateDirect(1 &lt;&lt; 20));
+ * encoder.append(System.nanoTime(), bmp280.readPressure());
+ * ...
+ * encoder.finish();
+ * </pre>
+ */
+public final class SampleEncoder {
+
+    public static final int DEFAULT_BLOCK_SAMPLES = 1024;
+
+    // Block header: sample count, length in bytes, first timestamp, first value bits
+    static final int HEADER_SIZE = 24;
+    private static final int HEADER_COUNT = 0;
+    private static final int HEADER_LENGTH = 4;
+    private static final int HEADER_TIMESTAMP = 8;
+    private static final int HEADER_VALUE = 16;
+
+    // Longest sample: 5 + 64 bits timestamp, 2 + 5 + 6 + 64 bits value, plus pending bits
+    private static final int MAX_SAMPLE_BYTES = 20;
+
+    private final ByteBuffer buffer;
+    private final int blockSamples;
+    private final BlockIndex index = new BlockIndex();
+    private final BitWriter writer = new BitWriter();
+
+    private int blockOffset = -1;
+    private int blockCount;
+    private long previousTimestamp;
+    private long previousDelta;
+    private long previousValueBits;
+    private int previousLeading;
+    private int previousTrailing;
+
+    /**
+     * @param buffer the stream is written from its position on
+     */
+    public SampleEncoder(ByteBuffer buffer) {
+        this(buffer, DEFAULT_BLOCK_SAMPLES);
+    }
+
+    /**
+     * @param buffer       the stream is written from its position on
+     * @param blockSamples samples per block, fewer make seeks faster and compression worse
+     */
+    public SampleEncoder(ByteBuffer buffer, int blockSamples) {
+        if (blockSamples < 1)
+            throw new IllegalArgumentException("Invalid block size: " + blockSamples);
+        this.buffer = buffer;
+        this.blockSamples = blockSamples;
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param timestampNanos {@link System#nanoTime()} when the sample was taken
+     * @param value          the sample
+     * @return false if the buffer is full; the sample is not written then
+     */
+    public boolean append(long timestampNanos, double value) {
+        if (blockOffset >= 0 && blockCount == blockSamples)
+            closeBlock();
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (blockOffset < 0) {
+            if (buffer.remaining() < HEADER_SIZE)
+                return false;
+            startBlock(timestampNanos, valueBits);
+            return true;
+        }
+        if (buffer.remaining() < MAX_SAMPLE_BYTES)
+            return false;
+        encodeTimestamp(timestampNanos);
+        encodeValue(valueBits);
+        blockCount++;
+        return true;
+    }
+
+    /**
+     * Completes the current block. The samples of a block can only be decoded after the block
+     * is complete; appending continues with a new block.
+     */
+    public void finish() {
+        if (blockOffset >= 0)
+            closeBlock();
+    }
+
+    public BlockIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * @return the buffer, its position is behind the last byte written
+     */
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    private void startBlock(long timestampNanos, long valueBits) {
+        blockOffset = buffer.position();
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putLong(timestampNanos);
+        buffer.putLong(valueBits);
+        writer.reset(buffer);
+        index.add(blockOffset, timestampNanos, 1);
+        blockCount = 1;
+        previousTimestamp = timestampNanos;
+        previousDelta = 0;
+        previousValueBits = valueBits;
+        previousLeading = -1;
+    }
+
+    private void closeBlock() {
+        writer.flush();
+        buffer.putInt(blockOffset + HEADER_COUNT, blockCount);
+        buffer.putInt(blockOffset + HEADER_LENGTH, buffer.position() - blockOffset);
+        index.setSampleCount(index.size() - 1, blockCount);
+        blockOffset = -1;
+    }
+
+    private void encodeTimestamp(long timestampNanos) {
+        long delta = timestampNanos - previousTimestamp;
+        long deltaOfDelta = delta - previousDelta;
+        previousTimestamp = timestampNanos;
+        previousDelta = delta;
+
+        if (deltaOfDelta == 0) {
+            writer.writeBit(false);
+        } else if (deltaOfDelta >= -(1 << 6) && deltaOfDelta < (1 << 6)) {
+            writer.writeBits(0x2, 2);
+            writer.writeBits(deltaOfDelta, 7);
+        } else if (deltaOfDelta >= -(1 << 13) && deltaOfDelta < (1 << 13)) {
+            writer.writeBits(0x6, 3);
+            writer.writeBits(deltaOfDelta, 14);
+        } else if (deltaOfDelta >= -(1 << 19) && deltaOfDelta < (1 << 19)) {
+            writer.writeBits(0xE, 4);
+            writer.writeBits(deltaOfDelta, 20);
+        } else if (deltaOfDelta >= Integer.MIN_VALUE && deltaOfDelta <= Integer.MAX_VALUE) {
+            writer.writeBits(0x1E, 5);
+            writer.writeBits(deltaOfDelta, 32);
+        } else {
+            writer.writeBits(0x1F, 5);
+            writer.writeLong(deltaOfDelta, 64);
+        }
+    }
+
+    private void encodeValue(long valueBits) {
+        long xor = valueBits ^ previousValueBits;
+        previousValueBits = valueBits;
+
+        if (xor == 0) {
+            writer.writeBit(false);
+            return;
+        }
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            // Differing bits fit into the window of the previous value
+            writer.writeBits(0x2, 2);
+            writer.writeLong(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+            int meaningful = 64 - leading - trailing;
+            writer.writeBits(0x3, 2);
+            writer.writeBits(leading, 5);
+            writer.writeBits(meaningful - 1, 6);
+            writer.writeLong(xor >>> trailing, meaningful);
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+    }
+
+    static int headerSampleCount(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + HEADER_COUNT);
+    }
+
+    static int headerLength(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset + HEADER_LENGTH);
+    }
+
+    static long headerFirstTimestamp(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + HEADER_TIMESTAMP);
+    }
+
+    static long headerFirstValueBits(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset + HEADER_VALUE);
+    }
+}
@@ -0,0 +1,164 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import de.patricksteinert.rpisensorlib.SampleListener;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Append-only store for the samples of all sensors. Each sample is a fixed 32 byte binary
+ * record with sensor id, monotonic timestamp, up to two raw values and the compensated value,
+ * written into memory-mapped segment files. Appending copies the record into the page cache
+ * without a system call and without formatting; the kernel writes the pages back in the
+ * background, {@link #flush()} forces them to the card.
+ * <p>
+ * A full segment is closed and the next one is created, see
+ * {@link #SampleStore(File, int)}. When the store is opened again, the records of the last
+ * segment are checked and appending continues behind the last complete record; a record
+ * torn by a power loss is dropped.
+ * <p>
+ * Keeping the raw values allows to compensate the samples again later, e.g. with
+ * {@code AdafruitBMP280.Measurement.getRawPressure()} and {@code getRawTemperature()}.
+ * <pre>
+ * SampleStore store = new SampleStore(new File("/var/lib/sensors"));
+ * AdafruitBMP280.Measurement m = bmp280.readTemperatureAndPressure();
+ * store.append(PRESSURE, System.nanoTime(), m.getRawPressure(), m.getRawTemperature(), m.getPressure());
+ *
+ * SampleCursor cursor = store.newCursor();
+ * while (cursor.next())
+ *     process(cursor.getSensorId(), cursor.getTimestampNanos(), cursor.getValue());
+ * </pre>
+ */
+public class SampleStore implements AutoCloseable {
+
+    /**
+     * Raw value of samples that have none.
+     */
+    public static final int NO_RAW_VALUE = Integer.MIN_VALUE;
+
+    /**
+     * Records per segment: 8 MiB segment files.
+     */
+    public static final int DEFAULT_SEGMENT_RECORDS = 1 << 18;
+
+    private final File directory;
+    private final int segmentRecords;
+
+    private Segment segment;
+    private int position;
+    private boolean closed;
+
+    /**
+     * Opens the store with the default segment size.
+     *
+     * @param directory directory of the segment files, created if it does not exist
+     * @throws IOException if the directory or the segments cannot be opened
+     */
+    public SampleStore(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_RECORDS);
+    }
+
+    /**
+     * @param directory      directory of the segment files, created if it does not exist
+     * @param segmentRecords number of records per segment file
+     * @throws IOException if the directory or the segments cannot be opened
+     */
+    public SampleStore(File directory, int segmentRecords) throws IOException {
+        if (segmentRecords < 1 || segmentRecords > Integer.MAX_VALUE / Segment.RECORD_SIZE)
+            throw new IllegalArgumentException("Invalid segment size: " + segmentRecords + " records");
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        this.directory = directory;
+        this.segmentRecords = segmentRecords;
+
+        List<Integer> segments = Segment.list(directory);
+        int last = segments.isEmpty() ? 0 : segments.get(segments.size() - 1);
+        segment = Segment.openWritable(directory, last, segmentRecords);
+        position = segment.countValid();
+        segment.clearFrom(position);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Appends a sample.
+     *
+     * @param sensorId       id of the sensor, chosen by the application
+     * @param timestampNanos {@link System#nanoTime()} when the sample was taken
+     * @param raw1           first raw value, e.g. the raw pressure, or {@link #NO_RAW_VALUE}
+     * @param raw2           second raw value, e.g. the raw temperature, or {@link #NO_RAW_VALUE}
+     * @param value          the compensated value
+     * @throws IOException if the next segment cannot be created
+     */
+    public synchronized void append(int sensorId, long timestampNanos, int raw1, int raw2, double value) throws IOException {
+        if (closed)
+            throw new IllegalStateException("Store is closed");
+        if (position == segment.capacity)
+            roll();
+        segment.write(position++, sensorId, timestampNanos, raw1, raw2, value);
+    }
+
+    /**
+     * Appends a sample without raw values.
+     */
+    public void append(int sensorId, long timestampNanos, double value) throws IOException {
+        append(sensorId, timestampNanos, NO_RAW_VALUE, NO_RAW_VALUE, value);
+    }
+
+    private void roll() throws IOException {
+        segment.buffer.force();
+        segment = Segment.openWritable(directory, segment.index + 1, segmentRecords);
+        position = 0;
+        segment.clearFrom(0);
+    }
+
+    /**
+     * Writes the appended records of the current segment to the storage. Full segments are
+     * written when the store moves on to the next one.
+     */
+    public synchronized void flush() {
+        if (!closed)
+            segment.buffer.force();
+    }
+
+    /**
+     * @return a cursor positioned before the first record of the store
+     */
+    public SampleCursor newCursor() {
+        return new SampleCursor(directory);
+    }
+
+    /**
+     * Adapts the store to a {@link SampleListener}, e.g. for the samples of a
+     * {@code SensorScheduler}. The samples are stored without raw values.
+     *
+     * @param sensorId id the samples are stored with
+     * @return listener appending the samples
+     */
+    public SampleListener listener(final int sensorId) {
+        return new SampleListener() {
+            @Override
+            public void onSample(long timestampNanos, double value) {
+                try {
+                    append(sensorId, timestampNanos, value);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+    }
+
+    /**
+     * Flushes and closes the store. The mapping itself is released when it is garbage collected.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        segment.buffer.force();
+        closed = true;
+    }
+}
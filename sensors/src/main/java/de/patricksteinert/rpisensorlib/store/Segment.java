@@ -0,0 +1,166 @@
+package de.patricksteinert.rpisensorlib.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A segment file of the store mapped into memory, and the layout of its records.
+ * <p>
+ * A record has 32 bytes, little endian:
+ * <pre>
+ *  0 int    sensor id
+ *  4 int    first raw value
+ *  8 long   timestamp in nanos
+ * 16 double compensated value
+ * 24 int    second raw value
+ * 28 int    checksum of bytes 0..27
+ * </pre>
+ * The checksum is written last. A record is valid if its checksum matches, so a record torn
+ * by a crash and the zero filled space behind the last record are both recognized.
+ */
+final class Segment {
+
+    static final int RECORD_SIZE = 32;
+
+    static final int SENSOR_ID = 0;
+    static final int RAW_1 = 4;
+    static final int TIMESTAMP = 8;
+    static final int VALUE = 16;
+    static final int RAW_2 = 24;
+    static final int CHECKSUM = 28;
+
+    private static final String PREFIX = "samples-";
+    private static final String SUFFIX = ".seg";
+
+    final int index;
+    final MappedByteBuffer buffer;
+    final int capacity;
+
+    private Segment(int index, MappedByteBuffer buffer) {
+        this.index = index;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity() / RECORD_SIZE;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Maps a segment for writing, creating the file with room for {@code records} records
+     * if it does not exist.
+     */
+    static Segment openWritable(File directory, int index, int records) throws IOException {
+        File file = file(directory, index);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() == 0)
+                raf.setLength((long) records * RECORD_SIZE);
+            long length = raf.length() - raf.length() % RECORD_SIZE;
+            return new Segment(index, raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length));
+        }
+    }
+
+    /**
+     * Maps an existing segment for reading, or returns null if it does not exist.
+     */
+    static Segment openReadOnly(File directory, int index) throws IOException {
+        File file = file(directory, index);
+        if (!file.isFile())
+            return null;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length() - raf.length() % RECORD_SIZE;
+            return new Segment(index, raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    static File file(File directory, int index) {
+        return new File(directory, String.format("%s%08d%s", PREFIX, index, SUFFIX));
+    }
+
+    /**
+     * @return the indexes of the segments in the directory, in ascending order
+     */
+    static List<Integer> list(File directory) {
+        List<Integer> indexes = new ArrayList<>();
+        String[] names = directory.list();
+        if (names == null)
+            return indexes;
+        for (String name : names) {
+            if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX))
+                continue;
+            try {
+                indexes.add(Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // Not a segment
+            }
+        }
+        Collections.sort(indexes);
+        return indexes;
+    }
+
+    /**
+     * Writes a record, the checksum last.
+     */
+    void write(int record, int sensorId, long timestampNanos, int raw1, int raw2, double value) {
+        int offset = record * RECORD_SIZE;
+        long valueBits = Double.doubleToRawLongBits(value);
+        buffer.putInt(offset + SENSOR_ID, sensorId);
+        buffer.putInt(offset + RAW_1, raw1);
+        buffer.putLong(offset + TIMESTAMP, timestampNanos);
+        buffer.putLong(offset + VALUE, valueBits);
+        buffer.putInt(offset + RAW_2, raw2);
+        buffer.putInt(offset + CHECKSUM, checksum(sensorId, raw1, timestampNanos, valueBits, raw2));
+    }
+
+    boolean isValid(int record) {
+        int offset = record * RECORD_SIZE;
+        return buffer.getInt(offset + CHECKSUM) == checksum(
+                buffer.getInt(offset + SENSOR_ID),
+                buffer.getInt(offset + RAW_1),
+                buffer.getLong(offset + TIMESTAMP),
+                buffer.getLong(offset + VALUE),
+                buffer.getInt(offset + RAW_2));
+    }
+
+    /**
+     * @return the number of valid records from the start of the segment
+     */
+    int countValid() {
+        int count = 0;
+        while (count < capacity && isValid(count))
+            count++;
+        return count;
+    }
+
+    /**
+     * Clears everything behind the valid records. After a crash the page holding the last
+     * record may have been lost while later pages with older content were written, so stale
+     * records could otherwise show up behind the records appended after the restart.
+     */
+    void clearFrom(int record) {
+        for (int offset = record * RECORD_SIZE; offset < capacity * RECORD_SIZE; offset += 8) {
+            if (buffer.getLong(offset) != 0)
+                buffer.putLong(offset, 0);
+        }
+    }
+
+    /**
+     * Multiplicative hash of the record fields. It is seeded so that a zero filled record
+     * does not match.
+     */
+    static int checksum(int sensorId, int raw1, long timestampNanos, long valueBits, int raw2) {
+        int h = 0x5EED5EED;
+        h = (h ^ sensorId) * 0x9E3779B1;
+        h = (h ^ raw1) * 0x9E3779B1;
+        h = (h ^ (int) timestampNanos) * 0x9E3779B1;
+        h = (h ^ (int) (timestampNanos >>> 32)) * 0x9E3779B1;
+        h = (h ^ (int) valueBits) * 0x9E3779B1;
+        h = (h ^ (int) (valueBits >>> 32)) * 0x9E3779B1;
+        h = (h ^ raw2) * 0x9E3779B1;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,145 @@
+package de.patricksteinert.rpisensorlib.stream;
+
+import java.util.Arrays;
+
+/**
+ * Quantile sketch with a fixed relative accuracy and fixed memory: values are counted in
+ * logarithmic buckets, so a quantile is returned within the relative accuracy of the true value
+ * (DDSketch). Values can be removed again, which makes the sketch usable for sliding windows.
+ * <p>
+ * Magnitudes below {@code minMagnitude} count as zero, magnitudes above {@code maxMagnitude}
+ * fall into the last bucket. The defaults cover everything from 0.001 to 10^7 with 1 % accuracy
+ * in about 9 KiB. Adding and removing take constant time and do not allocate.
+ */
+public final class QuantileSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final double DEFAULT_MIN_MAGNITUDE = 1e-3;
+    public static final double DEFAULT_MAX_MAGNITUDE = 1e7;
+
+    private final double minMagnitude;
+    private final double gamma;
+    private final double logGamma;
+    private final int offset;
+    private final int[] positive;
+    private final int[] negative;
+    private long zeroCount;
+    private long count;
+
+    // Bucket range in use, so clearing does not touch the whole arrays
+    private int lowestUsed;
+    private int highestUsed = -1;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MIN_MAGNITUDE, DEFAULT_MAX_MAGNITUDE);
+    }
+
+    /**
+     * @param relativeAccuracy relative error of the quantiles, e.g. 0.01
+     * @param minMagnitude     smallest magnitude told apart from zero
+     * @param maxMagnitude     largest magnitude with the full accuracy
+     */
+    public QuantileSketch(double relativeAccuracy, double minMagnitude, double maxMagnitude) {
+        if (!(relativeAccuracy > 0 && relativeAccuracy < 1) || !(minMagnitude > 0) || !(maxMagnitude > minMagnitude))
+            throw new IllegalArgumentException("Invalid sketch: accuracy " + relativeAccuracy
+                    + ", magnitudes " + minMagnitude + ".." + maxMagnitude);
+        this.minMagnitude = minMagnitude;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.offset = rawIndex(minMagnitude);
+        int buckets = rawIndex(maxMagnitude) - offset + 1;
+        this.positive = new int[buckets];
+        this.negative = new int[buckets];
+        this.lowestUsed = buckets;
+    }
+
+    private int rawIndex(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    private int index(double magnitude) {
+        int index = rawIndex(magnitude) - offset;
+        return index < 0 ? 0 : index >= positive.length ? positive.length - 1 : index;
+    }
+
+    public void add(double value) {
+        update(value, 1);
+    }
+
+    /**
+     * Removes a value added before.
+     */
+    public void remove(double value) {
+        update(value, -1);
+    }
+
+    private void update(double value, int delta) {
+        count += delta;
+        double magnitude = Math.abs(value);
+        if (magnitude < minMagnitude) {
+            zeroCount += delta;
+            return;
+        }
+        int index = index(magnitude);
+        if (value > 0)
+            positive[index] += delta;
+        else
+            negative[index] += delta;
+        if (index < lowestUsed)
+            lowestUsed = index;
+        if (index > highestUsed)
+            highestUsed = index;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @param quantile the quantile, 0 to 1, e.g. 0.5 for the median
+     * @return the value at the quantile, NaN if the sketch is empty
+     */
+    public double getQuantile(double quantile) {
+        if (quantile < 0 || quantile > 1)
+            throw new IllegalArgumentException("Invalid quantile: " + quantile);
+        if (count <= 0)
+            return Double.NaN;
+        long rank = (long) (quantile * (count - 1));
+        long seen = 0;
+        for (int i = highestUsed; i >= lowestUsed; i--) {
+            seen += negative[i];
+            if (seen > rank)
+                return -value(i);
+        }
+        seen += zeroCount;
+        if (seen > rank)
+            return 0;
+        for (int i = lowestUsed; i <= highestUsed; i++) {
+            seen += positive[i];
+            if (seen > rank)
+                return value(i);
+        }
+        return value(highestUsed);
+    }
+
+    /**
+     * @return the value representing a bucket, with the same relative error to both bounds
+     */
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index + offset) / (gamma + 1);
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void clear() {
+        if (highestUsed >= lowestUsed) {
+            Arrays.fill(positive, lowestUsed, highestUsed + 1, 0);
+            Arrays.fill(negative, lowestUsed, highestUsed + 1, 0);
+        }
+        lowestUsed = positive.length;
+        highestUsed = -1;
+        zeroCount = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,179 @@
+package de.patricksteinert.rpisensorlib.stream;
+
+import de.patricksteinert.rpisensorlib.SampleListener;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the latest samples of one sensor as (monotonic nanos, value) pairs in a primitive
+ * array. One thread publishes, any number of threads read; neither side locks or allocates.
+ * <p>
+ * Every sample gets a sequence number, starting at 0. Readers keep their own position with
+ * a {@link Reader}; a reader that falls more than the capacity behind loses the overwritten
+ * samples and continues with the oldest one still available.
+ * <pre>
+ * SampleRingBuffer pressure = new SampleRingBuffer(1024);
+ * scheduler.schedule("pressure", bmp280.pressureRead(), 10.0, pressure);
+ *
+ * SampleRingBuffer.Reader reader = pressure.newReader();
+ * while (reader.next())
+ *     process(reader.getTimestampNanos(), reader.getValue());
+ * </pre>
+ */
+public final class SampleRingBuffer implements SampleListener {
+
+    // Slot layout in the data array: sequence, timestamp, value bits
+    private static final int SLOT_SIZE = 3;
+    private static final long WRITING = -1;
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray data;
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * @param capacity number of samples kept, rounded up to a power of two
+     */
+    public SampleRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > (1 << 28))
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.data = new AtomicLongArray(this.capacity * SLOT_SIZE);
+        for (int i = 0; i < this.capacity; i++)
+            data.set(i * SLOT_SIZE, WRITING);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of samples published so far, which is the sequence of the next sample
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * Appends a sample. Must only be called by one thread at a time.
+     *
+     * @param timestampNanos {@link System#nanoTime()} when the sample was taken
+     * @param value          the sample
+     */
+    public void publish(long timestampNanos, double value) {
+        long sequence = published.get();
+        int slot = ((int) sequence & mask) * SLOT_SIZE;
+        // Readers seeing the marker know the slot is being overwritten
+        data.set(slot, WRITING);
+        data.lazySet(slot + 1, timestampNanos);
+        data.lazySet(slot + 2, Double.doubleToRawLongBits(value));
+        data.lazySet(slot, sequence);
+        published.lazySet(sequence + 1);
+    }
+
+    @Override
+    public void onSample(long timestampNanos, double value) {
+        publish(timestampNanos, value);
+    }
+
+    /**
+     * @return a reader positioned at the oldest sample still available
+     */
+    public Reader newReader() {
+        Reader reader = new Reader();
+        reader.sequence = Math.max(0, published.get() - capacity);
+        return reader;
+    }
+
+    /**
+     * Position of one consumer in the buffer. A reader is used by one thread.
+     */
+    public final class Reader {
+        private long sequence;
+        private long sampleSequence = -1;
+        private long timestampNanos;
+        private double value;
+        private long lost;
+
+        private Reader() {
+        }
+
+        /**
+         * Moves to the next sample.
+         *
+         * @return false if there is no new sample
+         */
+        public boolean next() {
+            while (true) {
+                long end = published.get();
+                if (sequence >= end)
+                    return false;
+                long oldest = end - capacity;
+                if (sequence < oldest) {
+                    lost += oldest - sequence;
+                    sequence = oldest;
+                }
+                if (readSlot(sequence)) {
+                    sequence++;
+                    return true;
+                }
+                // Overwritten while reading, start over from the new oldest sample
+            }
+        }
+
+        /**
+         * Moves to the latest sample, skipping all samples in between.
+         *
+         * @return false if there is no new sample
+         */
+        public boolean latest() {
+            while (true) {
+                long end = published.get();
+                if (sequence >= end)
+                    return false;
+                if (readSlot(end - 1)) {
+                    sequence = end;
+                    return true;
+                }
+            }
+        }
+
+        private boolean readSlot(long s) {
+            int slot = ((int) s & mask) * SLOT_SIZE;
+            if (data.get(slot) != s)
+                return false;
+            long t = data.get(slot + 1);
+            long v = data.get(slot + 2);
+            if (data.get(slot) != s)
+                return false;
+            sampleSequence = s;
+            timestampNanos = t;
+            value = Double.longBitsToDouble(v);
+            return true;
+        }
+
+        /**
+         * @return sequence number of the current sample, -1 before the first one
+         */
+        public long getSequence() {
+            return sampleSequence;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * @return number of samples overwritten before this reader got to them
+         */
+        public long getLostSamples() {
+            return lost;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package de.patricksteinert.rpisensorlib.stream;
+
+import de.patricksteinert.rpisensorlib.SampleListener;
+
+/**
+ * Statistics over the samples of the last {@code windowNanos}, updated with every sample:
+ * minimum and maximum from monotonic deques, mean and variance with Welford's method extended
+ * by removal, quantiles from a {@link QuantileSketch}. Each sample costs amortized constant work
+ * and no allocation; the memory is fixed by the maximum number of samples in the window.
+ * <pre>
+ * SlidingWindow lastMinute = new SlidingWindow(TimeUnit.MINUTES.toNanos(1), 1024);
+ * scheduler.schedule("pressure", bmp280.pressureRead(), 10.0, lastMinute);
+ * // or for blocking reads
+ * lastMinute.onSample(System.nanoTime(), bmp280.readPressure());
+ * </pre>
+ * Samples that are not finite, e.g. the NaN of an interrupted read, are counted and skipped.
+ * A window is used by one thread; readers in other threads need to synchronize on it.
+ */
+public final class SlidingWindow implements SampleListener, WindowStatistics {
+
+    private final long windowNanos;
+    private final int capacity;
+    private final int mask;
+
+    // Samples by sequence number, from head (oldest) to tail (next)
+    private final long[] timestamps;
+    private final double[] values;
+    private long head;
+    private long tail;
+
+    // Sequence numbers of the candidates for minimum and maximum, the first one is the extreme
+    private final long[] minDeque;
+    private final long[] maxDeque;
+    private long minHead;
+    private long minTail;
+    private long maxHead;
+    private long maxTail;
+
+    private double mean;
+    private double m2;
+    private final QuantileSketch sketch;
+    private long skipped;
+
+    /**
+     * @param windowNanos length of the window
+     * @param maxSamples  most samples kept, rounded up to a power of two; at a higher rate the
+     *                    window covers only the latest samples
+     */
+    public SlidingWindow(long windowNanos, int maxSamples) {
+        this(windowNanos, maxSamples, new QuantileSketch());
+    }
+
+    /**
+     * @param windowNanos length of the window
+     * @param maxSamples  most samples kept, rounded up to a power of two
+     * @param sketch      an empty sketch for the quantiles, e.g. with a different accuracy
+     */
+    public SlidingWindow(long windowNanos, int maxSamples, QuantileSketch sketch) {
+        if (windowNanos <= 0)
+            throw new IllegalArgumentException("Invalid window: " + windowNanos + " ns");
+        if (maxSamples < 1 || maxSamples > (1 << 24))
+            throw new IllegalArgumentException("Invalid window size: " + maxSamples);
+        this.windowNanos = windowNanos;
+        this.capacity = maxSamples == 1 ? 1 : Integer.highestOneBit(maxSamples - 1) << 1;
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.minDeque = new long[capacity];
+        this.maxDeque = new long[capacity];
+        this.sketch = sketch;
+    }
+
+    @Override
+    public void onSample(long timestampNanos, double value) {
+        advanceTo(timestampNanos);
+        if (!Double.isFinite(value)) {
+            skipped++;
+            return;
+        }
+        if (tail - head == capacity)
+            removeOldest();
+
+        long sequence = tail++;
+        int slot = (int) sequence & mask;
+        timestamps[slot] = timestampNanos;
+        values[slot] = value;
+
+        while (minTail > minHead && values[(int) minDeque[(int) (minTail - 1) & mask] & mask] >= value)
+            minTail--;
+        minDeque[(int) minTail++ & mask] = sequence;
+        while (maxTail > maxHead && values[(int) maxDeque[(int) (maxTail - 1) & mask] & mask] <= value)
+            maxTail--;
+        maxDeque[(int) maxTail++ & mask] = sequence;
+
+        long count = tail - head;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        sketch.add(value);
+    }
+
+    /**
+     * Drops the samples that fell out of the window by the given time, e.g. before reading the
+     * statistics of a sensor that stopped delivering samples.
+     *
+     * @param nowNanos the current time
+     */
+    public void advanceTo(long nowNanos) {
+        while (tail > head && nowNanos - timestamps[(int) head & mask] >= windowNanos)
+            removeOldest();
+    }
+
+    private void removeOldest() {
+        long sequence = head++;
+        double value = values[(int) sequence & mask];
+        if (minDeque[(int) minHead & mask] == sequence)
+            minHead++;
+        if (maxDeque[(int) maxHead & mask] == sequence)
+            maxHead++;
+
+        long count = tail - head;
+        if (count == 0) {
+            mean = 0;
+            m2 = 0;
+        } else {
+            // Welford's update reversed
+            double previousMean = mean;
+            mean -= (value - mean) / count;
+            m2 -= (value - previousMean) * (value - mean);
+            if (m2 < 0)
+                m2 = 0;
+        }
+        sketch.remove(value);
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * @return the number of non-finite samples skipped since the window was created
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    @Override
+    public long getStartNanos() {
+        return tail > head ? timestamps[(int) head & mask] : 0;
+    }
+
+    @Override
+    public long getEndNanos() {
+        return tail > head ? timestamps[(int) (tail - 1) & mask] : 0;
+    }
+
+    @Override
+    public long getCount() {
+        return tail - head;
+    }
+
+    @Override
+    public double getMin() {
+        return tail > head ? values[(int) minDeque[(int) minHead & mask] & mask] : Double.NaN;
+    }
+
+    @Override
+    public double getMax() {
+        return tail > head ? values[(int) maxDeque[(int) maxHead & mask] & mask] : Double.NaN;
+    }
+
+    @Override
+    public double getMean() {
+        return tail > head ? mean : Double.NaN;
+    }
+
+    @Override
+    public double getVariance() {
+        long count = tail - head;
+        return count > 1 ? m2 / (count - 1) : count == 1 ? 0 : Double.NaN;
+    }
+
+    @Override
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public double getQuantile(double quantile) {
+        return sketch.getQuantile(quantile);
+    }
+}
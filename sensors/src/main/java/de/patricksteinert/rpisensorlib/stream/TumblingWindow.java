@@ -0,0 +1,163 @@
+package de.patricksteinert.rpisensorlib.stream;
+
+import de.patricksteinert.rpisensorlib.SampleListener;
+
+/**
+ * Statistics over consecutive, non-overlapping windows of {@code windowNanos}, e.g. 1 minute
+ * rollups. The first sample starts the first window; a sample after the end of the current
+ * window completes it, hands it to the {@link WindowListener} and starts the window it falls
+ * into. Windows without samples are skipped.
+ * <p>
+ * Each sample costs constant work and no allocation: minimum, maximum, Welford's mean and
+ * variance and a {@link QuantileSketch} are updated in place and reset after each window.
+ * <pre>
+ * TumblingWindow minutes = new TumblingWindow(TimeUnit.MINUTES.toNanos(1), window -&gt;
+ *         System.out.printf("%.1f .. %.1f Pa%n", window.getMin(), window.getMax()));
+ * scheduler.schedule("pressure", bmp280.pressureRead(), 10.0, minutes);
+ * </pre>
+ * Samples that are not finite, e.g. the NaN of an interrupted read, are counted and skipped.
+ * A window is used by one thread.
+ */
+public final class TumblingWindow implements SampleListener, WindowStatistics {
+
+    private final long windowNanos;
+    private final WindowListener listener;
+    private final QuantileSketch sketch;
+
+    private boolean started;
+    private long startNanos;
+    private long count;
+    private double min;
+    private double max;
+    private double mean;
+    private double m2;
+    private long skipped;
+
+    /**
+     * @param windowNanos length of the windows
+     * @param listener    receives the completed windows
+     */
+    public TumblingWindow(long windowNanos, WindowListener listener) {
+        this(windowNanos, listener, new QuantileSketch());
+    }
+
+    /**
+     * @param windowNanos length of the windows
+     * @param listener    receives the completed windows
+     * @param sketch      an empty sketch for the quantiles, e.g. with a different accuracy
+     */
+    public TumblingWindow(long windowNanos, WindowListener listener, QuantileSketch sketch) {
+        if (windowNanos <= 0)
+            throw new IllegalArgumentException("Invalid window: " + windowNanos + " ns");
+        this.windowNanos = windowNanos;
+        this.listener = listener;
+        this.sketch = sketch;
+        reset();
+    }
+
+    @Override
+    public void onSample(long timestampNanos, double value) {
+        if (!started) {
+            started = true;
+            startNanos = timestampNanos;
+        } else if (timestampNanos - startNanos >= windowNanos) {
+            complete();
+            startNanos += (timestampNanos - startNanos) / windowNanos * windowNanos;
+        }
+        if (!Double.isFinite(value)) {
+            skipped++;
+            return;
+        }
+
+        count++;
+        if (value < min)
+            min = value;
+        if (value > max)
+            max = value;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        sketch.add(value);
+    }
+
+    /**
+     * Completes the current window early, e.g. at shutdown. Does nothing if it has no samples.
+     */
+    public void flush() {
+        if (count > 0) {
+            complete();
+            started = false;
+        }
+    }
+
+    private void complete() {
+        if (count > 0)
+            listener.onWindow(this);
+        reset();
+    }
+
+    private void reset() {
+        count = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        mean = 0;
+        m2 = 0;
+        sketch.clear();
+    }
+
+    public long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * @return the number of non-finite samples skipped since the window was created
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    @Override
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    @Override
+    public long getEndNanos() {
+        return startNanos + windowNanos;
+    }
+
+    @Override
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public double getMin() {
+        return count > 0 ? min : Double.NaN;
+    }
+
+    @Override
+    public double getMax() {
+        return count > 0 ? max : Double.NaN;
+    }
+
+    @Override
+    public double getMean() {
+        return count > 0 ? mean : Double.NaN;
+    }
+
+    @Override
+    public double getVariance() {
+        return count > 1 ? m2 / (count - 1) : count == 1 ? 0 : Double.NaN;
+    }
+
+    @Override
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    @Override
+    public double getQuantile(double quantile) {
+        return sketch.getQuantile(quantile);
+    }
+}
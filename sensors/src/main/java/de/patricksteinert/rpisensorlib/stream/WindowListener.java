@@ -0,0 +1,12 @@
+package de.patricksteinert.rpisensorlib.stream;
+
+/**
+ * Receives the statistics of completed {@link TumblingWindow}s.
+ */
+public interface WindowListener {
+
+    /**
+     * @param window statistics of the completed window, only valid during the call
+     */
+    void onWindow(WindowStatistics window);
+}
@@ -0,0 +1,41 @@
+package de.patricksteinert.rpisensorlib.stream;
+
+/**
+ * Statistics of the samples in a time window. Values are NaN while the window is empty.
+ */
+public interface WindowStatistics {
+
+    /**
+     * @return timestamp of the start of the window in nanos
+     */
+    long getStartNanos();
+
+    /**
+     * @return timestamp of the end of the window in nanos
+     */
+    long getEndNanos();
+
+    long getCount();
+
+    double getMin();
+
+    double getMax();
+
+    double getMean();
+
+    /**
+     * @return the sample variance
+     */
+    double getVariance();
+
+    /**
+     * @return the sample standard deviation
+     */
+    double getStandardDeviation();
+
+    /**
+     * @param quantile the quantile, 0 to 1, e.g. 0.95
+     * @return the value at the quantile, within the relative accuracy of the {@link QuantileSketch}
+     */
+    double getQuantile(double quantile);
+}